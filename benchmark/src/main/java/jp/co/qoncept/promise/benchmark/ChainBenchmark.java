@@ -0,0 +1,149 @@
+package jp.co.qoncept.promise.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+import jp.co.qoncept.functional.Supplier;
+import jp.co.qoncept.promise.IntPromise;
+import jp.co.qoncept.promise.Promise;
+import jp.co.qoncept.util.Tuple4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Chains of then/catch_/finally_ of the given depth, attached either to a
+// promise that is already settled or to one settled after the whole chain
+// has been built. mapInt is map over an IntPromise, for comparison with the
+// boxed map.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChainBenchmark {
+	private static final Function<Integer, Promise<Integer>> INCREMENT = new Function<Integer, Promise<Integer>>() {
+		@Override
+		public Promise<Integer> apply(Integer value) {
+			return Promise.fulfill(value + 1);
+		}
+	};
+	private static final Function<Integer, Integer> MAP_INCREMENT = new Function<Integer, Integer>() {
+		@Override
+		public Integer apply(Integer value) {
+			return value + 1;
+		}
+	};
+	private static final ToIntFunction<Integer> UNBOX = new ToIntFunction<Integer>() {
+		@Override
+		public int applyAsInt(Integer value) {
+			return value;
+		}
+	};
+	private static final IntUnaryOperator INT_INCREMENT = new IntUnaryOperator() {
+		@Override
+		public int applyAsInt(int value) {
+			return value + 1;
+		}
+	};
+	private static final Function<Exception, Promise<Integer>> RECOVER = new Function<Exception, Promise<Integer>>() {
+		@Override
+		public Promise<Integer> apply(Exception reason) {
+			return Promise.fulfill(0);
+		}
+	};
+
+	@Param({ "1", "10", "100" })
+	public int depth;
+
+	@Param({ "true", "false" })
+	public boolean settled;
+
+	private Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> root() {
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		if (settled) {
+			deferred.get1().accept(0);
+		}
+		return deferred;
+	}
+
+	private Integer finish(
+			Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> root,
+			Promise<Integer> tail) throws Exception {
+		if (!settled) {
+			root.get1().accept(0);
+		}
+		return tail.getNow(null);
+	}
+
+	@Benchmark
+	public Integer then() throws Exception {
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> root = root();
+		Promise<Integer> promise = root.get0();
+		for (int i = 0; i < depth; i++) {
+			promise = promise.then(INCREMENT);
+		}
+		return finish(root, promise);
+	}
+
+	@Benchmark
+	public Integer map() throws Exception {
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> root = root();
+		Promise<Integer> promise = root.get0();
+		for (int i = 0; i < depth; i++) {
+			promise = promise.map(MAP_INCREMENT);
+		}
+		return finish(root, promise);
+	}
+
+	@Benchmark
+	public int mapInt() throws Exception {
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> root = root();
+		IntPromise promise = root.get0().mapToInt(UNBOX);
+		for (int i = 0; i < depth; i++) {
+			promise = promise.map(INT_INCREMENT);
+		}
+		if (!settled) {
+			root.get1().accept(0);
+		}
+		return promise.getNow(-1);
+	}
+
+	@Benchmark
+	public Integer mixed() throws Exception {
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> root = root();
+		Promise<Integer> promise = root.get0();
+		for (int i = 0; i < depth; i++) {
+			final Promise<Integer> current = promise;
+			switch (i % 3) {
+			case 0:
+				promise = promise.then(INCREMENT);
+				break;
+			case 1:
+				promise = promise.catch_(RECOVER);
+				break;
+			default:
+				promise = promise.finally_(new Supplier<Promise<Integer>>() {
+					@Override
+					public Promise<Integer> get() {
+						return current;
+					}
+				});
+				break;
+			}
+		}
+		return finish(root, promise);
+	}
+}
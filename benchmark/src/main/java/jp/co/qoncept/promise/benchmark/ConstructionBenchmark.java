@@ -0,0 +1,74 @@
+package jp.co.qoncept.promise.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.promise.CompletablePromise;
+import jp.co.qoncept.promise.Promise;
+import jp.co.qoncept.util.Tuple3;
+import jp.co.qoncept.util.Tuple4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost of creating a settled promise through each public entry point.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConstructionBenchmark {
+	private static final Consumer<Tuple3<? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>>> FULFILL_1000 = new Consumer<Tuple3<? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>>>() {
+		@Override
+		public void accept(
+				Tuple3<? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> t) {
+			t.get0().accept(1000);
+		}
+	};
+
+	private final Integer value = 1000; // outside the cached range
+	private final Exception reason = new Exception();
+
+	@Benchmark
+	public Promise<Integer> fulfillCached() {
+		return Promise.fulfill(1);
+	}
+
+	@Benchmark
+	public Promise<Integer> fulfill() {
+		return Promise.fulfill(value);
+	}
+
+	@Benchmark
+	public Promise<Integer> reject() {
+		return Promise.reject(reason);
+	}
+
+	@Benchmark
+	public Promise<Integer> constructor() {
+		return new Promise<Integer>(FULFILL_1000);
+	}
+
+	@Benchmark
+	public Promise<Integer> deferred() {
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		deferred.get1().accept(value);
+		return deferred.get0();
+	}
+
+	@Benchmark
+	public Promise<Integer> completable() {
+		CompletablePromise<Integer> promise = new CompletablePromise<Integer>();
+		promise.complete(value);
+		return promise;
+	}
+}
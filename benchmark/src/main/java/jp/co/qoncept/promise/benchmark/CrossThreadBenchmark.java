@@ -0,0 +1,73 @@
+package jp.co.qoncept.promise.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+import jp.co.qoncept.promise.Promise;
+import jp.co.qoncept.util.Tuple4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Round trip of a promise fulfilled on another thread and observed by the
+// benchmark thread, either through a continuation or by blocking in await().
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CrossThreadBenchmark {
+	private ExecutorService settler;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		settler = Executors.newSingleThreadExecutor();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		settler.shutdownNow();
+	}
+
+	private Promise<Integer> settleElsewhere() {
+		final Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		settler.execute(new Runnable() {
+			@Override
+			public void run() {
+				deferred.get1().accept(1000);
+			}
+		});
+		return deferred.get0();
+	}
+
+	@Benchmark
+	public Integer await() throws Exception {
+		return settleElsewhere().await();
+	}
+
+	@Benchmark
+	public Integer thenAwait() throws Exception {
+		return settleElsewhere().map(
+				new Function<Integer, Integer>() {
+					@Override
+					public Integer apply(Integer value) {
+						return value + 1;
+					}
+				}).await();
+	}
+}
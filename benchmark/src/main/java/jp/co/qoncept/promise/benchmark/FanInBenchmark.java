@@ -0,0 +1,90 @@
+package jp.co.qoncept.promise.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+import jp.co.qoncept.promise.Promise;
+import jp.co.qoncept.util.Tuple4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Waiting on n pending promises with all() versus folding them with nested
+// then(), which is what callers had to write before all() existed.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FanInBenchmark {
+	@Param({ "100", "10000" })
+	public int n;
+
+	private List<Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>>> sources() {
+		List<Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>>> sources = new ArrayList<Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>>>(
+				n);
+		for (int i = 0; i < n; i++) {
+			sources.add(Promise.<Integer> deferred());
+		}
+		return sources;
+	}
+
+	private static void settle(
+			List<Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>>> sources) {
+		for (int i = 0; i < sources.size(); i++) {
+			sources.get(i).get1().accept(i);
+		}
+	}
+
+	@Benchmark
+	public List<Integer> all() throws Exception {
+		List<Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>>> sources = sources();
+		List<Promise<Integer>> promises = new ArrayList<Promise<Integer>>(n);
+		for (int i = 0; i < n; i++) {
+			promises.add(sources.get(i).get0());
+		}
+		Promise<List<Integer>> all = Promise.all(promises);
+		settle(sources);
+		return all.getNow(null);
+	}
+
+	@Benchmark
+	public List<Integer> chainedThen() throws Exception {
+		List<Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>>> sources = sources();
+		Promise<List<Integer>> result = Promise
+				.fulfill((List<Integer>) new ArrayList<Integer>(n));
+		for (int i = 0; i < n; i++) {
+			final Promise<Integer> promise = sources.get(i).get0();
+			result = result
+					.then(new Function<List<Integer>, Promise<List<Integer>>>() {
+						@Override
+						public Promise<List<Integer>> apply(
+								final List<Integer> values) {
+							return promise
+									.then(new Function<Integer, Promise<List<Integer>>>() {
+										@Override
+										public Promise<List<Integer>> apply(
+												Integer value) {
+											values.add(value);
+											return Promise.fulfill(values);
+										}
+									});
+						}
+					});
+		}
+		settle(sources);
+		return result.getNow(null);
+	}
+}
@@ -0,0 +1,51 @@
+package jp.co.qoncept.promise.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+import jp.co.qoncept.promise.Promise;
+import jp.co.qoncept.util.Tuple4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Settles the root of a long chain of pending promises. Guards the
+// trampoline: with recursive dispatch this overflows the stack.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = { "-Xss256k" })
+@State(Scope.Thread)
+public class LongChainBenchmark {
+	private static final Function<Integer, Promise<Integer>> IDENTITY = new Function<Integer, Promise<Integer>>() {
+		@Override
+		public Promise<Integer> apply(Integer value) {
+			return Promise.fulfill(value);
+		}
+	};
+
+	@Param({ "1000000" })
+	public int length;
+
+	@Benchmark
+	public Integer settleLongChain() throws Exception {
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		Promise<Integer> promise = deferred.get0();
+		for (int i = 0; i < length; i++) {
+			promise = promise.then(IDENTITY);
+		}
+		deferred.get1().accept(1);
+		return promise.getNow(null);
+	}
+}
@@ -0,0 +1,24 @@
+package jp.co.qoncept.promise;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class AggregateException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	private final List<Exception> reasons;
+
+	public AggregateException(List<? extends Exception> reasons) {
+		super("All promises were rejected.");
+		this.reasons = Collections.unmodifiableList(new ArrayList<Exception>(
+				reasons));
+		for (Exception reason : this.reasons) {
+			addSuppressed(reason);
+		}
+	}
+
+	public List<Exception> getReasons() {
+		return reasons;
+	}
+}
@@ -0,0 +1,190 @@
+package jp.co.qoncept.promise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+
+// Coalesces the keys passed to load() into batches handed to one call of the
+// batch function, like DataLoader. A batch is sent once it holds maxBatchSize
+// keys, windowMillis after its first key on the shared scheduler (0 sends it
+// as soon as possible), or on dispatch(), whichever comes first.
+// Keys loaded twice in a batch share a promise; keys missing from the
+// resulting map are fulfilled with null. The batch function is called on the
+// thread that closes the batch.
+public class BatchingLoader<K, V> {
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<BatchingLoader, Batch> CURRENT = AtomicReferenceFieldUpdater
+			.newUpdater(BatchingLoader.class, Batch.class, "current");
+
+	private final Function<? super List<K>, ? extends Promise<Map<K, V>>> batchFunction;
+	private final int maxBatchSize;
+	private final long windowMillis;
+	private volatile Batch<K, V> current = new Batch<K, V>();
+
+	public BatchingLoader(
+			Function<? super List<K>, ? extends Promise<Map<K, V>>> batchFunction,
+			int maxBatchSize, long windowMillis) {
+		if (batchFunction == null) {
+			throw new IllegalArgumentException(
+					"'batchFunction' cannot be null.");
+		}
+		if (maxBatchSize <= 0) {
+			throw new IllegalArgumentException(
+					"'maxBatchSize' must be positive.");
+		}
+		if (windowMillis < 0) {
+			throw new IllegalArgumentException(
+					"'windowMillis' cannot be negative.");
+		}
+
+		this.batchFunction = batchFunction;
+		this.maxBatchSize = maxBatchSize;
+		this.windowMillis = windowMillis;
+	}
+
+	public Promise<V> load(K key) {
+		if (key == null) {
+			throw new IllegalArgumentException("'key' cannot be null.");
+		}
+
+		for (;;) {
+			final Batch<K, V> batch = current;
+			Promise<V> loading = batch.promises.get(key);
+			if (loading != null) {
+				return loading;
+			}
+			if (!batch.enter()) {
+				continue;
+			}
+
+			// a slot is reserved before the key is added so that a batch
+			// never holds more than maxBatchSize keys
+			int slot = batch.slots.incrementAndGet();
+			if (slot > maxBatchSize) {
+				exit(batch);
+				close(batch);
+				continue;
+			}
+
+			CompletablePromise<V> promise = new CompletablePromise<V>();
+			loading = batch.promises.putIfAbsent(key, promise);
+			if (slot == maxBatchSize) {
+				close(batch);
+			} else if (slot == 1) {
+				batch.windowOrNull = Promise.schedule(new Runnable() {
+					@Override
+					public void run() {
+						close(batch);
+					}
+				}, windowMillis);
+				// closed by another load or dispatch() before the assignment
+				if (current != batch) {
+					batch.windowOrNull.cancel(false);
+				}
+			}
+			exit(batch);
+			return loading == null ? promise : loading;
+		}
+	}
+
+	// sends the keys loaded so far without waiting for the batch to fill
+	public void dispatch() {
+		close(current);
+	}
+
+	private void close(Batch<K, V> batch) {
+		if (CURRENT.compareAndSet(this, batch, new Batch<K, V>())) {
+			ScheduledFuture<?> window = batch.windowOrNull;
+			if (window != null) {
+				window.cancel(false);
+			}
+			// releases the token held while the batch was current
+			exit(batch);
+		}
+	}
+
+	private void exit(Batch<K, V> batch) {
+		if (batch.writers.decrementAndGet() == 0 && !batch.promises.isEmpty()) {
+			send(batch.promises);
+		}
+	}
+
+	private void send(final Map<K, CompletablePromise<V>> promises) {
+		List<K> keys = new ArrayList<K>(promises.keySet());
+		Promise<Map<K, V>> result;
+		try {
+			result = batchFunction.apply(keys);
+		} catch (Exception e) {
+			reject(promises, e);
+			return;
+		}
+		if (result == null) {
+			reject(promises, new NullPointerException(
+					"'batchFunction' returned null."));
+			return;
+		}
+
+		result.then(new Consumer<Map<K, V>>() {
+			@Override
+			public void accept(Map<K, V> values) {
+				if (values == null) {
+					reject(promises, new NullPointerException(
+							"'batchFunction' fulfilled with null."));
+					return;
+				}
+				try {
+					for (Map.Entry<K, CompletablePromise<V>> entry : promises
+							.entrySet()) {
+						entry.getValue().tryComplete(
+								values.get(entry.getKey()));
+					}
+				} catch (Exception e) {
+					// the keys completed before the map threw keep their values
+					reject(promises, e);
+				}
+			}
+		}, new Function<Exception, Promise<Void>>() {
+			@Override
+			public Promise<Void> apply(Exception reason) {
+				reject(promises, reason);
+				return Promise.fulfill(null);
+			}
+		});
+	}
+
+	private static <K, V> void reject(Map<K, CompletablePromise<V>> promises,
+			Exception reason) {
+		for (CompletablePromise<V> promise : promises.values()) {
+			promise.tryFail(reason);
+		}
+	}
+
+	// Keys collected for one call. writers counts the loads adding to it plus
+	// one token held while it is current; whoever brings it to zero sends the
+	// batch, which is then no longer written.
+	private static class Batch<K, V> {
+		private final ConcurrentHashMap<K, CompletablePromise<V>> promises = new ConcurrentHashMap<K, CompletablePromise<V>>();
+		private final AtomicInteger slots = new AtomicInteger();
+		private final AtomicInteger writers = new AtomicInteger(1);
+		private volatile ScheduledFuture<?> windowOrNull;
+
+		private boolean enter() {
+			for (;;) {
+				int writers = this.writers.get();
+				if (writers == 0) {
+					return false;
+				}
+				if (this.writers.compareAndSet(writers, writers + 1)) {
+					return true;
+				}
+			}
+		}
+	}
+}
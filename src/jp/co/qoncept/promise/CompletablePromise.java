@@ -0,0 +1,52 @@
+package jp.co.qoncept.promise;
+
+// A promise that is its own resolver, so creating and settling one allocates
+// nothing beyond the promise itself. Hand out the Promise<T> view to
+// consumers and keep the CompletablePromise<T> for the producer.
+public class CompletablePromise<T> extends Promise<T> implements Resolver<T> {
+	public CompletablePromise() {
+	}
+
+	@Override
+	public void complete(T value) {
+		_fulfill(value);
+	}
+
+	@Override
+	public void fail(Exception reason) {
+		if (reason == null) {
+			throw new IllegalArgumentException("'reason' cannot be null.");
+		}
+
+		_reject(reason);
+	}
+
+	@Override
+	public void follow(Promise<T> promise) {
+		if (promise == null) {
+			throw new IllegalArgumentException("'promise' cannot be null.");
+		}
+		if (isSettled()) {
+			if (isCancelled()) {
+				return;
+			}
+			throw new IllegalStateException();
+		}
+
+		_resolve(promise);
+	}
+
+	@Override
+	public boolean tryComplete(T value) {
+		return _tryFulfill(value);
+	}
+
+	@Override
+	public boolean tryFail(Exception reason) {
+		if (reason == null) {
+			throw new IllegalArgumentException("'reason' cannot be null.");
+		}
+
+		return _tryReject(reason);
+	}
+}
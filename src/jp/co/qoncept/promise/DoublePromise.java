@@ -0,0 +1,243 @@
+package jp.co.qoncept.promise;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleFunction;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.DoubleToLongFunction;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+// A promise of a double kept unboxed. Obtain one from Promise.mapToDouble() or
+// fulfill(); handlers run on the settling thread. Blocking waits on a
+// pending promise box the value once.
+public final class DoublePromise extends PrimitivePromise {
+	private double value;
+
+	DoublePromise() {
+	}
+
+	public static DoublePromise fulfill(double value) {
+		DoublePromise promise = new DoublePromise();
+		promise.fulfilled(value);
+		return promise;
+	}
+
+	public static DoublePromise reject(Exception reason) {
+		DoublePromise promise = new DoublePromise();
+		promise.rejected(reason);
+		return promise;
+	}
+
+	void fulfilled(double value) {
+		this.value = value;
+		fulfilled();
+	}
+
+	public double getNow(double valueIfPending) throws Exception {
+		return isFulfilled() ? value : valueIfPending;
+	}
+
+	public double await() throws Exception {
+		return isFulfilled() ? value : boxed().await();
+	}
+
+	public double await(long timeout, TimeUnit unit) throws Exception {
+		return isFulfilled() ? value : boxed().await(timeout, unit);
+	}
+
+	public DoublePromise map(final DoubleUnaryOperator mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final DoublePromise promise = new DoublePromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				double mapped;
+				try {
+					mapped = mapper.applyAsDouble(value);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.rejected(reason);
+			}
+		});
+		return promise;
+	}
+
+	public IntPromise mapToInt(final DoubleToIntFunction mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final IntPromise promise = new IntPromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				int mapped;
+				try {
+					mapped = mapper.applyAsInt(value);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.rejected(reason);
+			}
+		});
+		return promise;
+	}
+
+	public LongPromise mapToLong(final DoubleToLongFunction mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final LongPromise promise = new LongPromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				long mapped;
+				try {
+					mapped = mapper.applyAsLong(value);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.rejected(reason);
+			}
+		});
+		return promise;
+	}
+
+	public <U> Promise<U> mapToObj(final DoubleFunction<? extends U> mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final CompletablePromise<U> promise = new CompletablePromise<U>();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				U mapped;
+				try {
+					mapped = mapper.apply(value);
+				} catch (Exception e) {
+					promise.fail(e);
+					return;
+				}
+				promise.complete(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.fail(reason);
+			}
+		});
+		return promise;
+	}
+
+	public Promise<Double> boxed() {
+		return mapToObj(new DoubleFunction<Double>() {
+			@Override
+			public Double apply(double value) {
+				return value;
+			}
+		});
+	}
+
+	public DoublePromise recover(final ToDoubleFunction<? super Exception> recovery) {
+		if (recovery == null) {
+			throw new IllegalArgumentException("'recovery' cannot be null.");
+		}
+
+		final DoublePromise promise = new DoublePromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				promise.fulfilled(value);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				double recovered;
+				try {
+					recovered = recovery.applyAsDouble(reason);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(recovered);
+			}
+		});
+		return promise;
+	}
+
+	// Fulfills with the values in order once all are fulfilled, or rejects
+	// with the first rejection.
+	public static Promise<double[]> all(Iterable<? extends DoublePromise> promises) {
+		if (promises == null) {
+			throw new IllegalArgumentException("'promises' cannot be null.");
+		}
+
+		List<DoublePromise> list;
+		if (promises instanceof Collection) {
+			list = new ArrayList<DoublePromise>(
+					(Collection<? extends DoublePromise>) promises);
+		} else {
+			list = new ArrayList<DoublePromise>();
+			for (DoublePromise promise : promises) {
+				list.add(promise);
+			}
+		}
+		if (list.isEmpty()) {
+			return Promise.fulfill(new double[0]);
+		}
+
+		final CompletablePromise<double[]> promise = new CompletablePromise<double[]>();
+		final double[] values = new double[list.size()];
+		// drops to zero or below once settled
+		final AtomicInteger remaining = new AtomicInteger(values.length);
+		for (int i = 0; i < values.length; i++) {
+			final DoublePromise element = list.get(i);
+			final int index = i;
+			element.defer(new Promise.Continuation<Object>(null) {
+				@Override
+				protected void onFulfilled(Object self) {
+					values[index] = element.value;
+					if (remaining.decrementAndGet() == 0) {
+						promise.complete(values);
+					}
+				}
+
+				@Override
+				protected void onRejected(Exception reason) {
+					if (remaining.getAndSet(0) > 0) {
+						promise.fail(reason);
+					}
+				}
+			});
+		}
+		return promise;
+	}
+}
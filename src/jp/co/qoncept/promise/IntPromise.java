@@ -0,0 +1,243 @@
+package jp.co.qoncept.promise;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+
+// A promise of an int kept unboxed. Obtain one from Promise.mapToInt() or
+// fulfill(); handlers run on the settling thread. Blocking waits on a
+// pending promise box the value once.
+public final class IntPromise extends PrimitivePromise {
+	private int value;
+
+	IntPromise() {
+	}
+
+	public static IntPromise fulfill(int value) {
+		IntPromise promise = new IntPromise();
+		promise.fulfilled(value);
+		return promise;
+	}
+
+	public static IntPromise reject(Exception reason) {
+		IntPromise promise = new IntPromise();
+		promise.rejected(reason);
+		return promise;
+	}
+
+	void fulfilled(int value) {
+		this.value = value;
+		fulfilled();
+	}
+
+	public int getNow(int valueIfPending) throws Exception {
+		return isFulfilled() ? value : valueIfPending;
+	}
+
+	public int await() throws Exception {
+		return isFulfilled() ? value : boxed().await();
+	}
+
+	public int await(long timeout, TimeUnit unit) throws Exception {
+		return isFulfilled() ? value : boxed().await(timeout, unit);
+	}
+
+	public IntPromise map(final IntUnaryOperator mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final IntPromise promise = new IntPromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				int mapped;
+				try {
+					mapped = mapper.applyAsInt(value);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.rejected(reason);
+			}
+		});
+		return promise;
+	}
+
+	public LongPromise mapToLong(final IntToLongFunction mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final LongPromise promise = new LongPromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				long mapped;
+				try {
+					mapped = mapper.applyAsLong(value);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.rejected(reason);
+			}
+		});
+		return promise;
+	}
+
+	public DoublePromise mapToDouble(final IntToDoubleFunction mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final DoublePromise promise = new DoublePromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				double mapped;
+				try {
+					mapped = mapper.applyAsDouble(value);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.rejected(reason);
+			}
+		});
+		return promise;
+	}
+
+	public <U> Promise<U> mapToObj(final IntFunction<? extends U> mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final CompletablePromise<U> promise = new CompletablePromise<U>();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				U mapped;
+				try {
+					mapped = mapper.apply(value);
+				} catch (Exception e) {
+					promise.fail(e);
+					return;
+				}
+				promise.complete(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.fail(reason);
+			}
+		});
+		return promise;
+	}
+
+	public Promise<Integer> boxed() {
+		return mapToObj(new IntFunction<Integer>() {
+			@Override
+			public Integer apply(int value) {
+				return value;
+			}
+		});
+	}
+
+	public IntPromise recover(final ToIntFunction<? super Exception> recovery) {
+		if (recovery == null) {
+			throw new IllegalArgumentException("'recovery' cannot be null.");
+		}
+
+		final IntPromise promise = new IntPromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				promise.fulfilled(value);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				int recovered;
+				try {
+					recovered = recovery.applyAsInt(reason);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(recovered);
+			}
+		});
+		return promise;
+	}
+
+	// Fulfills with the values in order once all are fulfilled, or rejects
+	// with the first rejection.
+	public static Promise<int[]> all(Iterable<? extends IntPromise> promises) {
+		if (promises == null) {
+			throw new IllegalArgumentException("'promises' cannot be null.");
+		}
+
+		List<IntPromise> list;
+		if (promises instanceof Collection) {
+			list = new ArrayList<IntPromise>(
+					(Collection<? extends IntPromise>) promises);
+		} else {
+			list = new ArrayList<IntPromise>();
+			for (IntPromise promise : promises) {
+				list.add(promise);
+			}
+		}
+		if (list.isEmpty()) {
+			return Promise.fulfill(new int[0]);
+		}
+
+		final CompletablePromise<int[]> promise = new CompletablePromise<int[]>();
+		final int[] values = new int[list.size()];
+		// drops to zero or below once settled
+		final AtomicInteger remaining = new AtomicInteger(values.length);
+		for (int i = 0; i < values.length; i++) {
+			final IntPromise element = list.get(i);
+			final int index = i;
+			element.defer(new Promise.Continuation<Object>(null) {
+				@Override
+				protected void onFulfilled(Object self) {
+					values[index] = element.value;
+					if (remaining.decrementAndGet() == 0) {
+						promise.complete(values);
+					}
+				}
+
+				@Override
+				protected void onRejected(Exception reason) {
+					if (remaining.getAndSet(0) > 0) {
+						promise.fail(reason);
+					}
+				}
+			});
+		}
+		return promise;
+	}
+}
@@ -0,0 +1,243 @@
+package jp.co.qoncept.promise;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongFunction;
+import java.util.function.LongToDoubleFunction;
+import java.util.function.LongToIntFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToLongFunction;
+
+// A promise of a long kept unboxed. Obtain one from Promise.mapToLong() or
+// fulfill(); handlers run on the settling thread. Blocking waits on a
+// pending promise box the value once.
+public final class LongPromise extends PrimitivePromise {
+	private long value;
+
+	LongPromise() {
+	}
+
+	public static LongPromise fulfill(long value) {
+		LongPromise promise = new LongPromise();
+		promise.fulfilled(value);
+		return promise;
+	}
+
+	public static LongPromise reject(Exception reason) {
+		LongPromise promise = new LongPromise();
+		promise.rejected(reason);
+		return promise;
+	}
+
+	void fulfilled(long value) {
+		this.value = value;
+		fulfilled();
+	}
+
+	public long getNow(long valueIfPending) throws Exception {
+		return isFulfilled() ? value : valueIfPending;
+	}
+
+	public long await() throws Exception {
+		return isFulfilled() ? value : boxed().await();
+	}
+
+	public long await(long timeout, TimeUnit unit) throws Exception {
+		return isFulfilled() ? value : boxed().await(timeout, unit);
+	}
+
+	public LongPromise map(final LongUnaryOperator mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final LongPromise promise = new LongPromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				long mapped;
+				try {
+					mapped = mapper.applyAsLong(value);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.rejected(reason);
+			}
+		});
+		return promise;
+	}
+
+	public IntPromise mapToInt(final LongToIntFunction mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final IntPromise promise = new IntPromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				int mapped;
+				try {
+					mapped = mapper.applyAsInt(value);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.rejected(reason);
+			}
+		});
+		return promise;
+	}
+
+	public DoublePromise mapToDouble(final LongToDoubleFunction mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final DoublePromise promise = new DoublePromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				double mapped;
+				try {
+					mapped = mapper.applyAsDouble(value);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.rejected(reason);
+			}
+		});
+		return promise;
+	}
+
+	public <U> Promise<U> mapToObj(final LongFunction<? extends U> mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final CompletablePromise<U> promise = new CompletablePromise<U>();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				U mapped;
+				try {
+					mapped = mapper.apply(value);
+				} catch (Exception e) {
+					promise.fail(e);
+					return;
+				}
+				promise.complete(mapped);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				promise.fail(reason);
+			}
+		});
+		return promise;
+	}
+
+	public Promise<Long> boxed() {
+		return mapToObj(new LongFunction<Long>() {
+			@Override
+			public Long apply(long value) {
+				return value;
+			}
+		});
+	}
+
+	public LongPromise recover(final ToLongFunction<? super Exception> recovery) {
+		if (recovery == null) {
+			throw new IllegalArgumentException("'recovery' cannot be null.");
+		}
+
+		final LongPromise promise = new LongPromise();
+		defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object self) {
+				promise.fulfilled(value);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				long recovered;
+				try {
+					recovered = recovery.applyAsLong(reason);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(recovered);
+			}
+		});
+		return promise;
+	}
+
+	// Fulfills with the values in order once all are fulfilled, or rejects
+	// with the first rejection.
+	public static Promise<long[]> all(Iterable<? extends LongPromise> promises) {
+		if (promises == null) {
+			throw new IllegalArgumentException("'promises' cannot be null.");
+		}
+
+		List<LongPromise> list;
+		if (promises instanceof Collection) {
+			list = new ArrayList<LongPromise>(
+					(Collection<? extends LongPromise>) promises);
+		} else {
+			list = new ArrayList<LongPromise>();
+			for (LongPromise promise : promises) {
+				list.add(promise);
+			}
+		}
+		if (list.isEmpty()) {
+			return Promise.fulfill(new long[0]);
+		}
+
+		final CompletablePromise<long[]> promise = new CompletablePromise<long[]>();
+		final long[] values = new long[list.size()];
+		// drops to zero or below once settled
+		final AtomicInteger remaining = new AtomicInteger(values.length);
+		for (int i = 0; i < values.length; i++) {
+			final LongPromise element = list.get(i);
+			final int index = i;
+			element.defer(new Promise.Continuation<Object>(null) {
+				@Override
+				protected void onFulfilled(Object self) {
+					values[index] = element.value;
+					if (remaining.decrementAndGet() == 0) {
+						promise.complete(values);
+					}
+				}
+
+				@Override
+				protected void onRejected(Exception reason) {
+					if (remaining.getAndSet(0) > 0) {
+						promise.fail(reason);
+					}
+				}
+			});
+		}
+		return promise;
+	}
+}
@@ -0,0 +1,52 @@
+package jp.co.qoncept.promise;
+
+public final class Outcome<T> {
+	private final boolean fulfilled;
+	private final T value;
+	private final Exception reason;
+
+	private Outcome(boolean fulfilled, T value, Exception reason) {
+		this.fulfilled = fulfilled;
+		this.value = value;
+		this.reason = reason;
+	}
+
+	public static <T> Outcome<T> fulfilled(T value) {
+		return new Outcome<T>(true, value, null);
+	}
+
+	public static <T> Outcome<T> rejected(Exception reason) {
+		if (reason == null) {
+			throw new IllegalArgumentException("'reason' cannot be null.");
+		}
+		return new Outcome<T>(false, null, reason);
+	}
+
+	public boolean isFulfilled() {
+		return fulfilled;
+	}
+
+	public boolean isRejected() {
+		return !fulfilled;
+	}
+
+	public T getValue() {
+		if (!fulfilled) {
+			throw new IllegalStateException();
+		}
+		return value;
+	}
+
+	public Exception getReason() {
+		if (fulfilled) {
+			throw new IllegalStateException();
+		}
+		return reason;
+	}
+
+	@Override
+	public String toString() {
+		return fulfilled ? "Fulfilled(" + value + ")" : "Rejected(" + reason
+				+ ")";
+	}
+}
@@ -0,0 +1,52 @@
+package jp.co.qoncept.promise;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+// Settlement shared by IntPromise, LongPromise and DoublePromise. The state is
+// encoded as in Promise, except that a fulfilled promise holds itself and
+// keeps its value in a primitive field of the subclass, written before the
+// state is published. Each is settled exactly once by the code that created
+// it, so the value never has competing writers.
+abstract class PrimitivePromise {
+	private static final AtomicReferenceFieldUpdater<PrimitivePromise, Object> STATE = AtomicReferenceFieldUpdater
+			.newUpdater(PrimitivePromise.class, Object.class, "state");
+
+	private volatile Object state;
+
+	PrimitivePromise() {
+	}
+
+	public boolean isSettled() {
+		return Promise.isSettled(state);
+	}
+
+	final void fulfilled() {
+		settle(this);
+	}
+
+	final void rejected(Exception reason) {
+		settle(Promise.failure(reason));
+	}
+
+	private void settle(Object outcome) {
+		if (!Promise.trySettle(STATE, this, outcome)) {
+			throw new IllegalStateException();
+		}
+	}
+
+	final void defer(Promise.Continuation<Object> continuation) {
+		Promise.defer(STATE, this, continuation);
+	}
+
+	// whether the value can be read; throws the reason if rejected
+	final boolean isFulfilled() throws Exception {
+		Object state = this.state;
+		if (state == this) {
+			return true;
+		}
+		if (!Promise.isSettled(state)) {
+			return false;
+		}
+		throw Promise.reasonOrNull(state);
+	}
+}
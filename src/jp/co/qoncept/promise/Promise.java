@@ -1,7 +1,35 @@
 package jp.co.qoncept.promise;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 
 import jp.co.qoncept.functional.Consumer;
 import jp.co.qoncept.functional.Function;
@@ -10,15 +38,43 @@ import jp.co.qoncept.util.Tuple3;
 import jp.co.qoncept.util.Tuple4;
 
 public class Promise<T> {
-	private Result<T> result;
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<Promise, Object> STATE = AtomicReferenceFieldUpdater
+			.newUpdater(Promise.class, Object.class, "state");
 
-	private List<Consumer<? super T>> fulfilledHandlers;
-	private List<Consumer<? super Exception>> rejectedHandlers;
+	private static final Object NIL = new Object();
+
+	private static final PromiseInstrumentation INSTRUMENTATION_OR_NULL = PromiseInstrumentation.INSTALLED_OR_NULL;
+	private static final PromiseLeakDetector LEAK_DETECTOR_OR_NULL = PromiseLeakDetector.INSTALLED_OR_NULL;
+
+	// already-settled promises are immutable and can be shared
+	private static final Promise<?> NULL = settled(NIL);
+	private static final Promise<Boolean> TRUE = settled(Boolean.TRUE);
+	private static final Promise<Boolean> FALSE = settled(Boolean.FALSE);
+	private static final int INTEGER_CACHE_LOW = -128;
+	private static final Promise<?>[] INTEGERS = new Promise<?>[256];
+
+	static {
+		for (int i = 0; i < INTEGERS.length; i++) {
+			INTEGERS[i] = settled(Integer.valueOf(INTEGER_CACHE_LOW + i));
+		}
+	}
+
+	// null or the top of the continuation stack while pending; once settled,
+	// the value itself (NIL for null) or a Failure holding the reason
+	private volatile Object state;
+
+	// runs the callbacks of then/catch_/finally_ unless given explicitly;
+	// null runs them on the settling thread
+	private final Executor callbackExecutor;
+
+	// while pending, what cancel() propagates to: the promise this one waits
+	// on, or the hook registered through cancellable()
+	private volatile Object cancellerOrNull;
 
 	public Promise(
 			Consumer<? super Tuple3<? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>>> executor) {
-		fulfilledHandlers = new ArrayList<Consumer<? super T>>();
-		rejectedHandlers = new ArrayList<Consumer<? super Exception>>();
+		this((Executor) null);
 
 		executor.accept(new Tuple3<Consumer<? super T>, Consumer<? super Exception>, Consumer<? super Promise<T>>>(
 				new Consumer<T>() {
@@ -39,89 +95,395 @@ public class Promise<T> {
 				}));
 	}
 
-	private Promise() {
-		this(
-				new Consumer<Tuple3<? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>>>() {
-					@Override
-					public void accept(
-							Tuple3<? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>> t) {
-					}
-				});
+	Promise() {
+		this((Executor) null);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Promise(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+		if (INSTRUMENTATION_OR_NULL != null) {
+			INSTRUMENTATION_OR_NULL.onCreate();
+			state = new Probe();
+		}
+		if (LEAK_DETECTOR_OR_NULL != null) {
+			PromiseLeakDetector.Leak leakOrNull = LEAK_DETECTOR_OR_NULL
+					.trackOrNull(this);
+			if (leakOrNull != null) {
+				Continuation<Object> tracker = new Tracker(this, leakOrNull);
+				tracker.next = (Continuation<Object>) state;
+				state = tracker;
+			}
+		}
+	}
+
+	// already settled; never reported to the instrumentation nor tracked
+	private Promise(Object outcome, Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+		this.state = outcome;
 	}
 
 	public boolean isSettled() {
-		return result != null;
+		return isSettled(state);
 	}
 
-	private void _fulfill(T value) {
-		if (isSettled()) {
-			throw new IllegalStateException();
+	public boolean isCancelled() {
+		Object state = this.state;
+		return state instanceof Failure
+				&& ((Failure) state).reason instanceof CancellationException;
+	}
+
+	// Rejects this promise with a CancellationException if it is still
+	// pending and walks up what it waits on: each upstream promise left
+	// without live dependents is cancelled too, and the hook of a promise
+	// created by cancellable() is run.
+	public boolean cancel() {
+		Object canceller = cancellerOrNull;
+		if (!trySettle(new Failure(new CancellationException()))) {
+			return false;
+		}
+		onCancel();
+
+		while (canceller instanceof Promise) {
+			Promise<?> upstream = (Promise<?>) canceller;
+			upstream.purge();
+			canceller = upstream.cancellerOrNull;
+			if (!upstream.cancelIfUnused()) {
+				return true;
+			}
+			upstream.onCancel();
 		}
+		if (canceller instanceof Runnable) {
+			((Runnable) canceller).run();
+		}
+		return true;
+	}
+
+	void onCancel() {
+	}
 
-		result = Result.of(value);
+	public T await() throws Exception {
+		Object state = this.state;
+		if (!isSettled(state)) {
+			state = park(false, 0L);
+		}
+		return Promise.<T> valueOf(state);
+	}
 
-		for (Consumer<? super T> handler : fulfilledHandlers) {
-			handler.accept(value);
+	public T await(long timeout, TimeUnit unit) throws Exception {
+		if (unit == null) {
+			throw new IllegalArgumentException("'unit' cannot be null.");
 		}
 
-		clearHandlers();
+		Object state = this.state;
+		if (!isSettled(state)) {
+			state = park(true, System.nanoTime() + unit.toNanos(timeout));
+		}
+		return Promise.<T> valueOf(state);
 	}
 
-	private void _reject(Exception reason) {
-		if (isSettled()) {
-			throw new IllegalStateException();
+	public T getNow(T valueIfPending) throws Exception {
+		Object state = this.state;
+		if (!isSettled(state)) {
+			Trampoline.flush();
+			state = this.state;
+			if (!isSettled(state)) {
+				return valueIfPending;
+			}
+		}
+		return Promise.<T> valueOf(state);
+	}
+
+	// Parks the calling thread until settlement unparks it; uses no monitors
+	// so that virtual threads are not pinned. Called from a continuation, it
+	// first runs what that thread has queued, which may be what settles this
+	// promise.
+	private Object park(boolean timed, long deadline)
+			throws InterruptedException, TimeoutException {
+		Trampoline.flush();
+		Waiter<T> waiter = new Waiter<T>(Thread.currentThread());
+		defer(waiter);
+		try {
+			for (;;) {
+				Object state = this.state;
+				if (isSettled(state)) {
+					return state;
+				}
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				if (timed) {
+					long nanos = deadline - System.nanoTime();
+					if (nanos <= 0L) {
+						throw new TimeoutException();
+					}
+					LockSupport.parkNanos(this, nanos);
+				} else {
+					LockSupport.park(this);
+				}
+			}
+		} finally {
+			if (!isSettled()) {
+				waiter.thread = null;
+				purge();
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T valueOf(Object state) throws Exception {
+		if (state instanceof Failure) {
+			throw ((Failure) observe(state)).reason;
+		}
+		return state == NIL ? null : (T) state;
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean cancelIfUnused() {
+		Object state = this.state;
+		if (isSettled(state)) {
+			return false;
+		}
+		for (Continuation<?> continuation = (Continuation<?>) state; continuation != null; continuation = continuation.next) {
+			if (isDependent(continuation)) {
+				return false;
+			}
+		}
+
+		Failure failure = new Failure(new CancellationException());
+		if (STATE.compareAndSet(this, state, failure)) {
+			cancellerOrNull = null;
+			if (state != null) {
+				Trampoline.dispatch(
+						Continuation.reverse((Continuation<T>) state), failure);
+			}
+			return true;
 		}
+		return false;
+	}
 
-		result = Result.of(reason);
+	// Probe and Tracker observe the promise itself rather than depend on it
+	private static boolean isDependent(Continuation<?> continuation) {
+		return !(continuation instanceof Probe)
+				&& !(continuation instanceof Tracker);
+	}
 
-		for (Consumer<? super Exception> handler : rejectedHandlers) {
-			handler.accept(reason);
+	// marks a rejection left unhandled at settlement as handled now that its
+	// reason is being passed on
+	private static Object observe(Object state) {
+		if (LEAK_DETECTOR_OR_NULL != null && state instanceof TrackedFailure) {
+			((TrackedFailure) state).leak.close();
 		}
+		return state;
+	}
+
+	static boolean isSettled(Object state) {
+		return state != null && !(state instanceof Continuation);
+	}
+
+	void _fulfill(T value) {
+		settle(value == null ? NIL : value);
+	}
 
-		clearHandlers();
+	void _reject(Exception reason) {
+		settle(new Failure(reason));
 	}
 
-	private void _resolve(Promise<T> promise) {
-		promise.defer(new Consumer<T>() {
+	void _resolve(Promise<T> promise) {
+		Object state = promise.state;
+		if (isSettled(state)) {
+			settle(observe(state));
+			return;
+		}
+
+		cancellerOrNull = promise;
+		promise.defer(new Continuation<T>(null) {
 			@Override
-			public void accept(T t) {
-				_fulfill(t);
+			protected void onFulfilled(T value) {
+				_fulfill(value);
 			}
-		}, new Consumer<Exception>() {
+
+			@Override
+			protected void onRejected(Exception reason) {
+				_reject(reason);
+			}
+
 			@Override
-			public void accept(Exception t) {
-				_reject(t);
+			protected boolean isDisposed() {
+				return isSettled();
 			}
 		});
 	}
 
-	private void clearHandlers() {
-		fulfilledHandlers.clear();
-		rejectedHandlers.clear();
+	boolean _tryFulfill(T value) {
+		return trySettle(value == null ? NIL : value);
 	}
 
-	private void defer(final Consumer<? super T> fulfilledHandler,
-			final Consumer<? super Exception> rejectedHandler) {
-		if (this.result != null) {
-			Result<T> result = this.result;
+	boolean _tryReject(Exception reason) {
+		return trySettle(new Failure(reason));
+	}
 
-			result.ifPresent(new Consumer<T>() {
-				@Override
-				public void accept(T t) {
-					fulfilledHandler.accept(t);
+	// outcomes arriving after a cancellation are dropped silently
+	private void settle(Object outcome) {
+		if (!trySettle(outcome) && !isCancelled()) {
+			throw new IllegalStateException();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private boolean trySettle(Object outcome) {
+		for (;;) {
+			Object state = this.state;
+			if (isSettled(state)) {
+				return false;
+			}
+
+			Object settled = outcome;
+			if (LEAK_DETECTOR_OR_NULL != null && state != null) {
+				settled = Tracker.settling((Continuation<?>) state, outcome);
+			}
+
+			if (STATE.compareAndSet(this, state, settled)) {
+				if (cancellerOrNull != null) {
+					cancellerOrNull = null;
 				}
-			}, new Consumer<Exception>() {
-				@Override
-				public void accept(Exception t) {
-					rejectedHandler.accept(t);
+				if (state != null) {
+					Trampoline.dispatch(
+							Continuation.reverse((Continuation<T>) state),
+							settled);
 				}
-			});
+				return true;
+			}
+		}
+	}
 
-			return;
+	@SuppressWarnings("unchecked")
+	private void defer(Continuation<T> continuation) {
+		if (INSTRUMENTATION_OR_NULL != null) {
+			INSTRUMENTATION_OR_NULL.onDefer();
+		}
+
+		for (;;) {
+			Object state = this.state;
+			if (isSettled(state)) {
+				continuation.next = null;
+				continuation.fireNext = null;
+				Trampoline.dispatch(continuation, observe(state));
+				return;
+			}
+
+			continuation.next = (Continuation<T>) state;
+			if (STATE.compareAndSet(this, state, continuation)) {
+				return;
+			}
+		}
+	}
+
+	// Unlinks disposed continuations so that promises outliving their
+	// dependents do not accumulate them.
+	@SuppressWarnings("unchecked")
+	private void purge() {
+		Continuation<T> top;
+		boolean unlinked = false;
+		for (;;) {
+			Object state = this.state;
+			if (!(state instanceof Continuation)) {
+				return;
+			}
+
+			top = (Continuation<T>) state;
+			if (!top.isDisposed()) {
+				break;
+			}
+			unlinked |= STATE.compareAndSet(this, top, top.next);
+		}
+
+		for (Continuation<T> continuation = top; continuation != null;) {
+			Continuation<T> next = continuation.next;
+			while (next != null && next.isDisposed()) {
+				next = next.next;
+			}
+			if (next != continuation.next) {
+				continuation.next = next;
+				unlinked = true;
+			}
+			if (LEAK_DETECTOR_OR_NULL != null && unlinked
+					&& continuation instanceof Tracker) {
+				// dependents that have gone away still count as handlers
+				((Tracker) continuation).handled = true;
+			}
+			continuation = next;
+		}
+	}
+
+	// Continuation stack operations for the primitive promises, whose state
+	// follows the same encoding but whose settlement is never instrumented,
+	// tracked or cancelled.
+	static <P> void defer(AtomicReferenceFieldUpdater<P, Object> updater,
+			P owner, Continuation<?> continuation) {
+		for (;;) {
+			Object state = updater.get(owner);
+			if (isSettled(state)) {
+				continuation.next = null;
+				continuation.fireNext = null;
+				Trampoline.dispatch(continuation, state);
+				return;
+			}
+
+			setNext(continuation, state);
+			if (updater.compareAndSet(owner, state, continuation)) {
+				return;
+			}
+		}
+	}
+
+	static <P> boolean trySettle(
+			AtomicReferenceFieldUpdater<P, Object> updater, P owner,
+			Object outcome) {
+		for (;;) {
+			Object state = updater.get(owner);
+			if (isSettled(state)) {
+				return false;
+			}
+
+			if (updater.compareAndSet(owner, state, outcome)) {
+				if (state != null) {
+					Trampoline.dispatch(
+							Continuation.reverse((Continuation<?>) state),
+							outcome);
+				}
+				return true;
+			}
 		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> void setNext(Continuation<T> continuation, Object next) {
+		continuation.next = (Continuation<T>) next;
+	}
+
+	static Object failure(Exception reason) {
+		return new Failure(reason);
+	}
+
+	// the reason of a settled state, or null if it is fulfilled
+	static Exception reasonOrNull(Object state) {
+		return state instanceof Failure ? ((Failure) observe(state)).reason
+				: null;
+	}
 
-		fulfilledHandlers.add(fulfilledHandler);
-		rejectedHandlers.add(rejectedHandler);
+	int continuationCount() {
+		int count = 0;
+		Object state = this.state;
+		if (state instanceof Continuation) {
+			for (Continuation<?> continuation = (Continuation<?>) state; continuation != null; continuation = continuation.next) {
+				if (isDependent(continuation)) {
+					count++;
+				}
+			}
+		}
+		return count;
 	}
 
 	public <U> Promise<U> then(
@@ -132,23 +494,66 @@ public class Promise<T> {
 	public <U> Promise<U> then(
 			final Function<? super T, ? extends Promise<U>> onFulfilled,
 			final Function<? super Exception, ? extends Promise<U>> onRejectedOrNull) {
+		return then(onFulfilled, onRejectedOrNull, callbackExecutor);
+	}
+
+	public <U> Promise<U> thenAsync(
+			final Function<? super T, ? extends Promise<U>> onFulfilled,
+			Executor executor) {
+		return thenAsync(onFulfilled, null, executor);
+	}
+
+	public <U> Promise<U> thenAsync(
+			final Function<? super T, ? extends Promise<U>> onFulfilled,
+			final Function<? super Exception, ? extends Promise<U>> onRejectedOrNull,
+			Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("'executor' cannot be null.");
+		}
+
+		return then(onFulfilled, onRejectedOrNull, executor);
+	}
+
+	private <U> Promise<U> then(
+			final Function<? super T, ? extends Promise<U>> onFulfilled,
+			final Function<? super Exception, ? extends Promise<U>> onRejectedOrNull,
+			Executor executorOrNull) {
 		if (onFulfilled == null) {
 			throw new IllegalArgumentException("'onFulfilled' cannot be null.");
 		}
 
-		final Promise<U> promise = new Promise<U>();
+		final Promise<U> promise = new Promise<U>(callbackExecutor);
+		promise.cancellerOrNull = this;
 
-		defer(new Consumer<T>() {
+		defer(new Continuation<T>(executorOrNull) {
 			@Override
-			public void accept(T t) {
-				promise._resolve(onFulfilled.apply(t));
+			protected void onFulfilled(T t) {
+				Promise<U> next;
+				try {
+					next = onFulfilled.apply(t);
+				} catch (Exception e) {
+					promise._reject(e);
+					return;
+				}
+				if (next == null) {
+					promise._reject(new NullPointerException(
+							"'onFulfilled' returned null."));
+					return;
+				}
+				promise._resolve(next);
 			}
-		}, new Consumer<Exception>() {
+
 			@Override
-			public void accept(Exception t) {
+			protected void onRejected(Exception t) {
 				if (onRejectedOrNull != null) {
 					Function<? super Exception, ? extends Promise<U>> onRejected = onRejectedOrNull;
-					Promise<U> recoveryOrNull = onRejected.apply(t);
+					Promise<U> recoveryOrNull;
+					try {
+						recoveryOrNull = onRejected.apply(t);
+					} catch (Exception e) {
+						promise._reject(e);
+						return;
+					}
 					if (recoveryOrNull != null) {
 						Promise<U> recovery = recoveryOrNull;
 						promise._resolve(recovery);
@@ -158,6 +563,16 @@ public class Promise<T> {
 
 				promise._reject(t);
 			}
+
+			@Override
+			protected boolean isDisposed() {
+				return promise.isSettled();
+			}
+
+			@Override
+			protected void onExecutionRejected(RejectedExecutionException e) {
+				promise._reject(e);
+			}
 		});
 
 		return promise;
@@ -165,21 +580,44 @@ public class Promise<T> {
 
 	public Promise<T> catch_(
 			final Function<? super Exception, ? extends Promise<T>> onRejected) {
+		return catch_(onRejected, callbackExecutor);
+	}
+
+	public Promise<T> catchAsync(
+			final Function<? super Exception, ? extends Promise<T>> onRejected,
+			Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("'executor' cannot be null.");
+		}
+
+		return catch_(onRejected, executor);
+	}
+
+	private Promise<T> catch_(
+			final Function<? super Exception, ? extends Promise<T>> onRejected,
+			Executor executorOrNull) {
 		if (onRejected == null) {
 			throw new IllegalArgumentException("'onRejected' cannot be null.");
 		}
 
-		final Promise<T> promise = new Promise<T>();
+		final Promise<T> promise = new Promise<T>(callbackExecutor);
+		promise.cancellerOrNull = this;
 
-		defer(new Consumer<T>() {
+		defer(new Continuation<T>(executorOrNull) {
 			@Override
-			public void accept(T t) {
+			protected void onFulfilled(T t) {
 				promise._fulfill(t);
 			}
-		}, new Consumer<Exception>() {
+
 			@Override
-			public void accept(Exception t) {
-				Promise<T> recoveryOrNull = onRejected.apply(t);
+			protected void onRejected(Exception t) {
+				Promise<T> recoveryOrNull;
+				try {
+					recoveryOrNull = onRejected.apply(t);
+				} catch (Exception e) {
+					promise._reject(e);
+					return;
+				}
 				if (recoveryOrNull != null) {
 					Promise<T> recovery = recoveryOrNull;
 					promise._resolve(recovery);
@@ -188,22 +626,53 @@ public class Promise<T> {
 
 				promise._reject(t);
 			}
+
+			@Override
+			protected boolean isDisposed() {
+				return promise.isSettled();
+			}
+
+			@Override
+			protected void onExecutionRejected(RejectedExecutionException e) {
+				promise._reject(e);
+			}
 		});
 
 		return promise;
 	}
 
 	public Promise<T> finally_(final Supplier<? extends Promise<T>> onSettled) {
+		return finally_(onSettled, callbackExecutor);
+	}
+
+	public Promise<T> finallyAsync(
+			final Supplier<? extends Promise<T>> onSettled, Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("'executor' cannot be null.");
+		}
+
+		return finally_(onSettled, executor);
+	}
+
+	private Promise<T> finally_(final Supplier<? extends Promise<T>> onSettled,
+			Executor executorOrNull) {
 		if (onSettled == null) {
 			throw new IllegalArgumentException("'onSettled' cannot be null.");
 		}
 
-		final Promise<T> promise = new Promise<T>();
+		final Promise<T> promise = new Promise<T>(callbackExecutor);
+		promise.cancellerOrNull = this;
 
-		defer(new Consumer<T>() {
+		defer(new Continuation<T>(executorOrNull) {
 			@Override
-			public void accept(T t) {
-				Promise<T> updateOrNull = onSettled.get();
+			protected void onFulfilled(T t) {
+				Promise<T> updateOrNull;
+				try {
+					updateOrNull = onSettled.get();
+				} catch (Exception e) {
+					promise._reject(e);
+					return;
+				}
 				if (updateOrNull != null) {
 					Promise<T> update = updateOrNull;
 					promise._resolve(update);
@@ -212,10 +681,16 @@ public class Promise<T> {
 
 				promise._fulfill(t);
 			}
-		}, new Consumer<Exception>() {
+
 			@Override
-			public void accept(Exception t) {
-				Promise<T> recoveryOrNull = onSettled.get();
+			protected void onRejected(Exception t) {
+				Promise<T> recoveryOrNull;
+				try {
+					recoveryOrNull = onSettled.get();
+				} catch (Exception e) {
+					promise._reject(e);
+					return;
+				}
 				if (recoveryOrNull != null) {
 					Promise<T> recovery = recoveryOrNull;
 					promise._resolve(recovery);
@@ -224,98 +699,1689 @@ public class Promise<T> {
 
 				promise._reject(t);
 			}
+
+			@Override
+			protected boolean isDisposed() {
+				return promise.isSettled();
+			}
+
+			@Override
+			protected void onExecutionRejected(RejectedExecutionException e) {
+				promise._reject(e);
+			}
 		});
 
 		return promise;
 	}
 
-	private static class Result<T> {
-		private boolean hasValue;
-		private T value;
-		private Exception reason;
-
-		private Result(boolean hasValue, T value, Exception reason) {
-			super();
-			this.hasValue = hasValue;
-			this.value = value;
-			this.reason = reason;
+	public <U> Promise<U> map(final Function<? super T, ? extends U> mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
 		}
 
-		public static <T> Result<T> of(T value) {
-			return new Result<T>(true, value, null);
-		}
+		final Promise<U> promise = new Promise<U>(callbackExecutor);
+		promise.cancellerOrNull = this;
 
-		public static <T> Result<T> of(Exception reason) {
-			if (reason == null) {
-				throw new IllegalArgumentException();
+		defer(new Continuation<T>(callbackExecutor) {
+			@Override
+			protected void onFulfilled(T t) {
+				U value;
+				try {
+					value = mapper.apply(t);
+				} catch (Exception e) {
+					promise._reject(e);
+					return;
+				}
+				promise._fulfill(value);
 			}
-			return new Result<T>(false, null, reason);
-		}
 
-		public void ifPresent(Consumer<? super T> ifPresent,
-				Consumer<? super Exception> orElse) {
-			if (hasValue) {
-				ifPresent.accept(value);
-			} else {
-				orElse.accept(reason);
+			@Override
+			protected void onRejected(Exception t) {
+				promise._reject(t);
 			}
-		}
-	}
 
-	// Extensions
+			@Override
+			protected boolean isDisposed() {
+				return promise.isSettled();
+			}
 
-	public static <T> Tuple4<? extends Promise<T>, ? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>> deferred() {
-		final Promise<T> promise = new Promise<T>();
-		return new Tuple4<Promise<T>, Consumer<? super T>, Consumer<? super Exception>, Consumer<? super Promise<T>>>(
-				promise, new Consumer<T>() {
-					@Override
-					public void accept(T t) {
-						promise._fulfill(t);
-					}
-				}, new Consumer<Exception>() {
-					@Override
-					public void accept(Exception t) {
-						promise._reject(t);
-					}
-				}, new Consumer<Promise<T>>() {
-					@Override
-					public void accept(Promise<T> t) {
-						promise._resolve(t);
-					}
-				});
-	}
+			@Override
+			protected void onExecutionRejected(RejectedExecutionException e) {
+				promise._reject(e);
+			}
+		});
 
-	public static <T> Promise<T> fulfill(final T value) {
-		return new Promise<T>(
-				new Consumer<Tuple3<? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>>>() {
-					@Override
-					public void accept(
-							Tuple3<? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>> executor) {
-						executor.get0().accept(value);
-					}
-				});
+		return promise;
 	}
 
-	public static <T> Promise<T> reject(final Exception reason) {
-		return new Promise<T>(
-				new Consumer<Tuple3<? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>>>() {
-					@Override
-					public void accept(
-							Tuple3<? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>> executor) {
-						executor.get1().accept(reason);
-					}
-				});
+	public Promise<T> recover(
+			final Function<? super Exception, ? extends T> recovery) {
+		if (recovery == null) {
+			throw new IllegalArgumentException("'recovery' cannot be null.");
+		}
+
+		final Promise<T> promise = new Promise<T>(callbackExecutor);
+		promise.cancellerOrNull = this;
+
+		defer(new Continuation<T>(callbackExecutor) {
+			@Override
+			protected void onFulfilled(T t) {
+				promise._fulfill(t);
+			}
+
+			@Override
+			protected void onRejected(Exception t) {
+				T value;
+				try {
+					value = recovery.apply(t);
+				} catch (Exception e) {
+					promise._reject(e);
+					return;
+				}
+				promise._fulfill(value);
+			}
+
+			@Override
+			protected boolean isDisposed() {
+				return promise.isSettled();
+			}
+
+			@Override
+			protected void onExecutionRejected(RejectedExecutionException e) {
+				promise._reject(e);
+			}
+		});
+
+		return promise;
 	}
 
-	public static <T> Promise<T> resolve(final Promise<T> promise) {
-		return new Promise<T>(
-				new Consumer<Tuple3<? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>>>() {
-					@Override
-					public void accept(
-							Tuple3<? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>> executor) {
-						executor.get2().accept(promise);
-					}
-				});
+	public IntPromise mapToInt(final ToIntFunction<? super T> mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final IntPromise promise = new IntPromise();
+		defer(new Continuation<T>(callbackExecutor) {
+			@Override
+			protected void onFulfilled(T t) {
+				int value;
+				try {
+					value = mapper.applyAsInt(t);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(value);
+			}
+
+			@Override
+			protected void onRejected(Exception t) {
+				promise.rejected(t);
+			}
+
+			@Override
+			protected boolean isDisposed() {
+				return promise.isSettled();
+			}
+
+			@Override
+			protected void onExecutionRejected(RejectedExecutionException e) {
+				promise.rejected(e);
+			}
+		});
+
+		return promise;
+	}
+
+	public LongPromise mapToLong(final ToLongFunction<? super T> mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final LongPromise promise = new LongPromise();
+		defer(new Continuation<T>(callbackExecutor) {
+			@Override
+			protected void onFulfilled(T t) {
+				long value;
+				try {
+					value = mapper.applyAsLong(t);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(value);
+			}
+
+			@Override
+			protected void onRejected(Exception t) {
+				promise.rejected(t);
+			}
+
+			@Override
+			protected boolean isDisposed() {
+				return promise.isSettled();
+			}
+
+			@Override
+			protected void onExecutionRejected(RejectedExecutionException e) {
+				promise.rejected(e);
+			}
+		});
+
+		return promise;
+	}
+
+	public DoublePromise mapToDouble(final ToDoubleFunction<? super T> mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final DoublePromise promise = new DoublePromise();
+		defer(new Continuation<T>(callbackExecutor) {
+			@Override
+			protected void onFulfilled(T t) {
+				double value;
+				try {
+					value = mapper.applyAsDouble(t);
+				} catch (Exception e) {
+					promise.rejected(e);
+					return;
+				}
+				promise.fulfilled(value);
+			}
+
+			@Override
+			protected void onRejected(Exception t) {
+				promise.rejected(t);
+			}
+
+			@Override
+			protected boolean isDisposed() {
+				return promise.isSettled();
+			}
+
+			@Override
+			protected void onExecutionRejected(RejectedExecutionException e) {
+				promise.rejected(e);
+			}
+		});
+
+		return promise;
+	}
+
+	public Promise<T> on(Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("'executor' cannot be null.");
+		}
+
+		Promise<T> promise = new Promise<T>(executor);
+		promise._resolve(this);
+		return promise;
+	}
+
+	static abstract class Continuation<T> {
+		private final Executor executorOrNull;
+		// stack link; only ever rewritten by purge() to skip disposed nodes
+		private Continuation<T> next;
+		// firing order, written when the promise it is deferred on settles
+		// and read once by the thread firing it
+		private Continuation<T> fireNext;
+
+		protected Continuation(Executor executorOrNull) {
+			this.executorOrNull = executorOrNull;
+		}
+
+		protected abstract void onFulfilled(T value);
+
+		protected abstract void onRejected(Exception reason);
+
+		protected boolean isDisposed() {
+			return false;
+		}
+
+		// its executor refused to run it; rejects what depends on it
+		protected void onExecutionRejected(RejectedExecutionException e) {
+		}
+
+		@SuppressWarnings("unchecked")
+		private void run(Object outcome) {
+			if (isDisposed()) {
+				return;
+			}
+
+			if (outcome instanceof Failure) {
+				onRejected(((Failure) outcome).reason);
+			} else {
+				onFulfilled(outcome == NIL ? null : (T) outcome);
+			}
+		}
+
+		// continuations are pushed LIFO; restore registration order before
+		// firing without touching the stack links a concurrent purge() may
+		// still be walking
+		public static <T> Continuation<T> reverse(Continuation<T> continuation) {
+			Continuation<T> reversed = null;
+			for (; continuation != null; continuation = continuation.next) {
+				if (!continuation.isDisposed()) {
+					continuation.fireNext = reversed;
+					reversed = continuation;
+				}
+			}
+			return reversed;
+		}
+	}
+
+	// Runs continuations of promises settled while another continuation is
+	// running on the same thread after that one returns instead of inside
+	// it, so settling a chain of any length uses constant stack depth.
+	private static class Trampoline {
+		private static final ThreadLocal<Trampoline> CURRENT = new ThreadLocal<Trampoline>() {
+			@Override
+			protected Trampoline initialValue() {
+				return new Trampoline();
+			}
+		};
+
+		private boolean running;
+		private Object[] queue = new Object[32];
+		private int head;
+		private int tail;
+
+		public static void dispatch(Continuation<?> continuations,
+				Object outcome) {
+			Trampoline trampoline = CURRENT.get();
+			if (trampoline.running) {
+				trampoline.enqueue(continuations, outcome);
+				return;
+			}
+
+			trampoline.running = true;
+			try {
+				fire(continuations, outcome);
+			} finally {
+				// what was queued belongs to promises already settled, so it
+				// fires even if this threw
+				try {
+					trampoline.drain();
+				} finally {
+					trampoline.running = false;
+				}
+			}
+		}
+
+		// runs the queue now if called from inside a continuation
+		public static void flush() {
+			Trampoline trampoline = CURRENT.get();
+			if (trampoline.running) {
+				trampoline.drain();
+			}
+		}
+
+		public static void invoke(Continuation<?> continuation, Object outcome) {
+			Trampoline trampoline = CURRENT.get();
+			if (trampoline.running) {
+				continuation.run(outcome);
+				return;
+			}
+
+			trampoline.running = true;
+			try {
+				continuation.run(outcome);
+			} finally {
+				try {
+					trampoline.drain();
+				} finally {
+					trampoline.running = false;
+				}
+			}
+		}
+
+		// The link is read before each continuation runs: one that moves
+		// itself onto another promise, as Pipeline and Retry do, has its
+		// fireNext rewritten by whichever thread settles that promise.
+		// A continuation that throws does not keep the others from running;
+		// the first exception is rethrown to the settling thread afterwards.
+		private static void fire(Continuation<?> continuation, Object outcome) {
+			RuntimeException thrownOrNull = null;
+			while (continuation != null) {
+				Continuation<?> next = continuation.fireNext;
+				if (continuation.executorOrNull == null) {
+					try {
+						continuation.run(outcome);
+					} catch (RuntimeException e) {
+						if (thrownOrNull == null) {
+							thrownOrNull = e;
+						}
+					}
+				} else {
+					try {
+						continuation.executorOrNull.execute(new Task(
+								continuation, outcome));
+					} catch (RejectedExecutionException e) {
+						if (!continuation.isDisposed()) {
+							continuation.onExecutionRejected(e);
+						}
+					}
+				}
+				continuation = next;
+			}
+			if (thrownOrNull != null) {
+				throw thrownOrNull;
+			}
+		}
+
+		private void enqueue(Continuation<?> continuations, Object outcome) {
+			queue[tail] = continuations;
+			queue[tail + 1] = outcome;
+			tail = (tail + 2) & (queue.length - 1);
+			if (tail == head) {
+				Object[] grown = new Object[queue.length * 2];
+				int length = queue.length - head;
+				System.arraycopy(queue, head, grown, 0, length);
+				System.arraycopy(queue, 0, grown, length, head);
+				head = 0;
+				tail = queue.length;
+				queue = grown;
+			}
+		}
+
+		private void drain() {
+			RuntimeException thrownOrNull = null;
+			while (head != tail) {
+				Continuation<?> continuations = (Continuation<?>) queue[head];
+				Object outcome = queue[head + 1];
+				queue[head] = null;
+				queue[head + 1] = null;
+				head = (head + 2) & (queue.length - 1);
+				try {
+					fire(continuations, outcome);
+				} catch (RuntimeException e) {
+					if (thrownOrNull == null) {
+						thrownOrNull = e;
+					}
+				}
+			}
+			if (thrownOrNull != null) {
+				throw thrownOrNull;
+			}
+		}
+	}
+
+	private static class Task implements Runnable {
+		private final Continuation<?> continuation;
+		private final Object outcome;
+
+		private Task(Continuation<?> continuation, Object outcome) {
+			this.continuation = continuation;
+			this.outcome = outcome;
+		}
+
+		@Override
+		public void run() {
+			Trampoline.invoke(continuation, outcome);
+		}
+	}
+
+	// Runs mapConcurrent: keeps at most maxConcurrency mapped promises in
+	// flight and pulls the next item only when one settles. Settled slots are
+	// pushed onto a lock-free stack and folded in by whichever thread wins the
+	// drain loop, so the item iterator and the result list are only ever
+	// touched by one thread at a time.
+	private static class Window<T, U> extends Promise<List<U>> {
+		@SuppressWarnings("rawtypes")
+		private static final AtomicIntegerFieldUpdater<Window> WIP = AtomicIntegerFieldUpdater
+				.newUpdater(Window.class, "wip");
+		@SuppressWarnings("rawtypes")
+		private static final AtomicReferenceFieldUpdater<Window, Slot> SETTLED = AtomicReferenceFieldUpdater
+				.newUpdater(Window.class, Slot.class, "settled");
+
+		private final Iterator<T> items;
+		private final Function<? super T, ? extends Promise<U>> mapper;
+		private final int maxConcurrency;
+		private final List<U> values = new ArrayList<U>();
+		private int active;
+		private volatile int wip;
+		private volatile Slot<U> settled;
+
+		private Window(Iterator<T> items,
+				Function<? super T, ? extends Promise<U>> mapper,
+				int maxConcurrency) {
+			this.items = items;
+			this.mapper = mapper;
+			this.maxConcurrency = maxConcurrency;
+		}
+
+		private void settled(Slot<U> slot) {
+			for (;;) {
+				Slot<U> top = settled;
+				slot.nextSettled = top;
+				if (SETTLED.compareAndSet(this, top, slot)) {
+					break;
+				}
+			}
+			drain();
+		}
+
+		@SuppressWarnings("unchecked")
+		private void drain() {
+			if (WIP.getAndIncrement(this) != 0) {
+				return;
+			}
+
+			int missed = 1;
+			for (;;) {
+				Slot<U> slot = SETTLED.getAndSet(this, null);
+				for (; slot != null; slot = slot.nextSettled) {
+					if (slot.reasonOrNull != null) {
+						super.trySettle(new Failure(slot.reasonOrNull));
+					} else {
+						values.set(slot.index, slot.value);
+					}
+					active--;
+				}
+
+				// whatever the items or the mapper throw rejects the window
+				// rather than leaving wip raised with nothing left to pull
+				if (!isSettled()) {
+					try {
+						while (active < maxConcurrency && items.hasNext()) {
+							Promise<U> mapped = mapper.apply(items.next());
+							if (mapped == null) {
+								throw new NullPointerException(
+										"'mapper' returned null.");
+							}
+							Slot<U> next = new Slot<U>(this, values.size());
+							values.add(null);
+							active++;
+							mapped.defer(next);
+						}
+						if (active == 0) {
+							super.trySettle(values);
+						}
+					} catch (Exception e) {
+						super.trySettle(new Failure(e));
+					}
+				}
+
+				missed = WIP.addAndGet(this, -missed);
+				if (missed == 0) {
+					return;
+				}
+			}
+		}
+
+		private static class Slot<U> extends Continuation<U> {
+			private final Window<?, U> window;
+			private final int index;
+			private U value;
+			private Exception reasonOrNull;
+			private Slot<U> nextSettled;
+
+			private Slot(Window<?, U> window, int index) {
+				super(null);
+				this.window = window;
+				this.index = index;
+			}
+
+			@Override
+			protected void onFulfilled(U value) {
+				this.value = value;
+				window.settled(this);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				this.reasonOrNull = reason;
+				window.settled(this);
+			}
+
+			@Override
+			protected boolean isDisposed() {
+				return window.isSettled();
+			}
+		}
+	}
+
+	// Runs retry: one continuation is moved from attempt to attempt, and
+	// failed attempts schedule the next one on the shared scheduler, so memory
+	// stays constant however many attempts are made.
+	private static class Retry<T> extends Promise<T> implements Runnable {
+		private final Supplier<? extends Promise<T>> attempt;
+		private final RetryPolicy policy;
+		private final Continuation<T> continuation;
+		private int attempts;
+		private volatile ScheduledFuture<?> futureOrNull;
+
+		private Retry(Supplier<? extends Promise<T>> attempt, RetryPolicy policy) {
+			this.attempt = attempt;
+			this.policy = policy;
+			this.continuation = new Continuation<T>(null) {
+				@Override
+				protected void onFulfilled(T value) {
+					Retry.super.trySettle(value == null ? NIL : value);
+				}
+
+				@Override
+				protected void onRejected(Exception reason) {
+					failed(reason);
+				}
+
+				@Override
+				protected boolean isDisposed() {
+					return isSettled();
+				}
+			};
+		}
+
+		@Override
+		public void run() {
+			if (isSettled()) {
+				return;
+			}
+
+			attempts++;
+			Promise<T> promise;
+			try {
+				promise = attempt.get();
+			} catch (Exception e) {
+				failed(e);
+				return;
+			}
+			if (promise == null) {
+				failed(new NullPointerException("'attempt' returned null."));
+				return;
+			}
+			super.cancellerOrNull = promise;
+			promise.defer(continuation);
+		}
+
+		private void failed(Exception reason) {
+			boolean retry;
+			try {
+				retry = policy.shouldRetry(attempts, reason);
+			} catch (Exception e) {
+				super.trySettle(new Failure(e));
+				return;
+			}
+			if (!retry) {
+				super.trySettle(new Failure(reason));
+				return;
+			}
+
+			super.cancellerOrNull = null;
+			futureOrNull = schedule(this, policy.delayMillis(attempts));
+		}
+
+		@Override
+		void onCancel() {
+			ScheduledFuture<?> future = futureOrNull;
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	// An immutable, reusable sequence of stages applied to a promise through a
+	// single continuation. Synchronous stages run back to back in that
+	// continuation; only a then() stage returning a pending promise moves it
+	// onto that promise.
+	public static final class Pipeline<T, R> {
+		private static final int MAP = 0;
+		private static final int RECOVER = 1;
+		private static final int THEN = 2;
+
+		private final int[] kinds;
+		private final Object[] functions;
+
+		private Pipeline(int[] kinds, Object[] functions) {
+			this.kinds = kinds;
+			this.functions = functions;
+		}
+
+		public <U> Pipeline<T, U> map(Function<? super R, ? extends U> mapper) {
+			if (mapper == null) {
+				throw new IllegalArgumentException("'mapper' cannot be null.");
+			}
+
+			return append(MAP, mapper);
+		}
+
+		public Pipeline<T, R> recover(
+				Function<? super Exception, ? extends R> recovery) {
+			if (recovery == null) {
+				throw new IllegalArgumentException("'recovery' cannot be null.");
+			}
+
+			return append(RECOVER, recovery);
+		}
+
+		public <U> Pipeline<T, U> then(
+				Function<? super R, ? extends Promise<U>> onFulfilled) {
+			if (onFulfilled == null) {
+				throw new IllegalArgumentException(
+						"'onFulfilled' cannot be null.");
+			}
+
+			return append(THEN, onFulfilled);
+		}
+
+		public Promise<R> apply(Promise<T> source) {
+			if (source == null) {
+				throw new IllegalArgumentException("'source' cannot be null.");
+			}
+
+			Promise<R> promise = new Promise<R>(source.callbackExecutor);
+			new Run<R>(kinds, functions, promise, source.callbackExecutor)
+					.resume(source, 0);
+			return promise;
+		}
+
+		private <U> Pipeline<T, U> append(int kind, Object function) {
+			int[] kinds = Arrays.copyOf(this.kinds, this.kinds.length + 1);
+			Object[] functions = Arrays.copyOf(this.functions,
+					this.functions.length + 1);
+			kinds[kinds.length - 1] = kind;
+			functions[functions.length - 1] = function;
+			return new Pipeline<T, U>(kinds, functions);
+		}
+
+		private static class Run<R> extends Continuation<Object> {
+			private final int[] kinds;
+			private final Object[] functions;
+			private final Promise<R> promise;
+			private int index;
+
+			private Run(int[] kinds, Object[] functions, Promise<R> promise,
+					Executor executorOrNull) {
+				super(executorOrNull);
+				this.kinds = kinds;
+				this.functions = functions;
+				this.promise = promise;
+			}
+
+			@SuppressWarnings("unchecked")
+			private void resume(Promise<?> source, int index) {
+				this.index = index;
+				promise.cancellerOrNull = source;
+				((Promise<Object>) source).defer(this);
+			}
+
+			@Override
+			protected void onFulfilled(Object value) {
+				advance(value, null);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				advance(null, reason);
+			}
+
+			@Override
+			protected boolean isDisposed() {
+				return promise.isSettled();
+			}
+
+			@Override
+			protected void onExecutionRejected(RejectedExecutionException e) {
+				promise._reject(e);
+			}
+
+			@SuppressWarnings("unchecked")
+			private void advance(Object value, Exception reasonOrNull) {
+				for (int i = index; i < kinds.length; i++) {
+					try {
+						switch (kinds[i]) {
+						case MAP:
+							if (reasonOrNull == null) {
+								value = ((Function<Object, Object>) functions[i])
+										.apply(value);
+							}
+							break;
+						case RECOVER:
+							if (reasonOrNull != null) {
+								value = ((Function<Exception, Object>) functions[i])
+										.apply(reasonOrNull);
+								reasonOrNull = null;
+							}
+							break;
+						case THEN:
+							if (reasonOrNull == null) {
+								Promise<Object> next = ((Function<Object, Promise<Object>>) functions[i])
+										.apply(value);
+								if (next == null) {
+									throw new NullPointerException(
+											"'onFulfilled' returned null.");
+								}
+								Object state = next.state;
+								if (!isSettled(state)) {
+									resume(next, i + 1);
+									return;
+								}
+								observe(state);
+								if (state instanceof Failure) {
+									reasonOrNull = ((Failure) state).reason;
+								} else {
+									value = state == NIL ? null : state;
+								}
+							}
+							break;
+						}
+					} catch (Exception e) {
+						// later stages see it as if the stage had rejected
+						value = null;
+						reasonOrNull = e;
+					}
+				}
+
+				if (reasonOrNull == null) {
+					promise._fulfill((R) value);
+				} else {
+					promise._reject(reasonOrNull);
+				}
+			}
+		}
+	}
+
+	// Settled by the stage's completion directly; cancelling it cancels the
+	// stage where the stage supports that.
+	private static class StagePromise<T> extends Promise<T> implements
+			BiConsumer<T, Throwable> {
+		private final CompletionStage<T> stage;
+
+		private StagePromise(CompletionStage<T> stage) {
+			this.stage = stage;
+		}
+
+		@Override
+		public void accept(T value, Throwable throwable) {
+			if (throwable == null) {
+				super.trySettle(value == null ? NIL : value);
+			} else {
+				super.trySettle(new Failure(reasonOf(throwable)));
+			}
+		}
+
+		@Override
+		void onCancel() {
+			try {
+				stage.toCompletableFuture().cancel(false);
+			} catch (UnsupportedOperationException e) {
+			}
+		}
+
+		private static Exception reasonOf(Throwable throwable) {
+			if (throwable instanceof CompletionException
+					&& throwable.getCause() != null) {
+				throwable = throwable.getCause();
+			}
+			if (throwable instanceof Exception) {
+				return (Exception) throwable;
+			}
+			return new ExecutionException(throwable);
+		}
+	}
+
+	private static class PromiseFuture<T> extends CompletableFuture<T> {
+		private final Promise<T> promise;
+
+		private PromiseFuture(Promise<T> promise) {
+			this.promise = promise;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled) {
+				promise.cancel();
+			}
+			return cancelled;
+		}
+	}
+
+	private static class Waiter<T> extends Continuation<T> {
+		private volatile Thread thread;
+
+		private Waiter(Thread thread) {
+			super(null);
+			this.thread = thread;
+		}
+
+		@Override
+		protected void onFulfilled(T value) {
+			wake();
+		}
+
+		@Override
+		protected void onRejected(Exception reason) {
+			wake();
+		}
+
+		@Override
+		protected boolean isDisposed() {
+			return thread == null;
+		}
+
+		private void wake() {
+			Thread thread = this.thread;
+			if (thread != null) {
+				this.thread = null;
+				LockSupport.unpark(thread);
+			}
+		}
+	}
+
+	// Aggregates the promises of all/allSettled into a pre-sized array with a
+	// single countdown and one continuation per element; when all fails fast
+	// or is cancelled, it unlinks its continuations from the other inputs.
+	private static class Join<T, E> extends Promise<List<E>> {
+		@SuppressWarnings("rawtypes")
+		private static final AtomicIntegerFieldUpdater<Join> REMAINING = AtomicIntegerFieldUpdater
+				.newUpdater(Join.class, "remaining");
+
+		private final Object[] values;
+		private final boolean settlesAll;
+		private volatile Promise<?>[] sources;
+		private volatile int remaining;
+
+		private Join(Promise<?>[] sources, boolean settlesAll) {
+			this.values = new Object[sources.length];
+			this.settlesAll = settlesAll;
+			this.sources = sources;
+			this.remaining = sources.length;
+		}
+
+		@SuppressWarnings("unchecked")
+		public static <T, E> Promise<List<E>> join(
+				Iterable<? extends Promise<T>> promises, boolean settlesAll) {
+			Promise<?>[] array = toArray(promises);
+
+			if (array.length == 0) {
+				return fulfill(Collections.<E> emptyList());
+			}
+
+			Join<T, E> join = new Join<T, E>(array, settlesAll);
+			for (int i = 0; i < array.length; i++) {
+				if (join.isSettled()) {
+					break;
+				}
+
+				((Promise<T>) array[i]).defer(new Element<T>(join, i));
+				// a rejection may have detached before this push
+				if (join.isSettled()) {
+					array[i].purge();
+				}
+			}
+			return join;
+		}
+
+		private void fulfilled(int index, T value) {
+			values[index] = settlesAll ? Outcome.fulfilled(value) : value;
+			countDown();
+		}
+
+		private void rejected(int index, Exception reason) {
+			if (settlesAll) {
+				values[index] = Outcome.<T> rejected(reason);
+				countDown();
+			} else if (super.trySettle(new Failure(reason))) {
+				detach();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void countDown() {
+			if (REMAINING.decrementAndGet(this) == 0) {
+				super._fulfill((List<E>) Arrays.asList(values));
+				sources = null;
+			}
+		}
+
+		@Override
+		void onCancel() {
+			detach();
+		}
+
+		private void detach() {
+			Promise<?>[] sources = this.sources;
+			if (sources == null) {
+				return;
+			}
+
+			this.sources = null;
+			for (Promise<?> source : sources) {
+				source.purge();
+			}
+		}
+
+		private static class Element<T> extends Continuation<T> {
+			private final Join<T, ?> join;
+			private final int index;
+
+			private Element(Join<T, ?> join, int index) {
+				super(null);
+				this.join = join;
+				this.index = index;
+			}
+
+			@Override
+			protected void onFulfilled(T value) {
+				join.fulfilled(index, value);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				join.rejected(index, reason);
+			}
+
+			@Override
+			protected boolean isDisposed() {
+				return join.isSettled();
+			}
+		}
+	}
+
+	// Settles with the first input of race/any to settle (or, for any, to
+	// fulfill), then disposes and unlinks its continuations on the others.
+	private static class Race<T> extends Promise<T> {
+		@SuppressWarnings("rawtypes")
+		private static final AtomicIntegerFieldUpdater<Race> REMAINING = AtomicIntegerFieldUpdater
+				.newUpdater(Race.class, "remaining");
+
+		private final Exception[] reasonsOrNull;
+		private volatile Promise<?>[] sources;
+		private volatile int remaining;
+
+		private Race(Promise<?>[] sources, boolean any) {
+			this.reasonsOrNull = any ? new Exception[sources.length] : null;
+			this.sources = sources;
+			this.remaining = sources.length;
+		}
+
+		@SuppressWarnings("unchecked")
+		public static <T> Promise<T> race(
+				Iterable<? extends Promise<T>> promises, boolean any) {
+			Promise<T>[] sources = (Promise<T>[]) toArray(promises);
+			if (any && sources.length == 0) {
+				return reject(new AggregateException(
+						Collections.<Exception> emptyList()));
+			}
+
+			Race<T> race = new Race<T>(sources, any);
+			for (int i = 0; i < sources.length; i++) {
+				if (race.isSettled()) {
+					break;
+				}
+
+				sources[i].defer(new Element<T>(race, i));
+				// the winner may have detached before this push
+				if (race.isSettled()) {
+					sources[i].purge();
+				}
+			}
+			return race;
+		}
+
+		private void fulfilled(T value) {
+			if (super.trySettle(value == null ? NIL : value)) {
+				detach();
+			}
+		}
+
+		private void rejected(int index, Exception reason) {
+			if (reasonsOrNull == null) {
+				if (super.trySettle(new Failure(reason))) {
+					detach();
+				}
+				return;
+			}
+
+			reasonsOrNull[index] = reason;
+			if (REMAINING.decrementAndGet(this) == 0) {
+				super.trySettle(new Failure(new AggregateException(Arrays
+						.asList(reasonsOrNull))));
+				sources = null;
+			}
+		}
+
+		@Override
+		void onCancel() {
+			detach();
+		}
+
+		private void detach() {
+			Promise<?>[] sources = this.sources;
+			if (sources == null) {
+				return;
+			}
+
+			this.sources = null;
+			for (Promise<?> source : sources) {
+				source.purge();
+			}
+		}
+
+		private static class Element<T> extends Continuation<T> {
+			private final Race<T> race;
+			private final int index;
+
+			private Element(Race<T> race, int index) {
+				super(null);
+				this.race = race;
+				this.index = index;
+			}
+
+			@Override
+			protected void onFulfilled(T value) {
+				race.fulfilled(value);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				race.rejected(index, reason);
+			}
+
+			@Override
+			protected boolean isDisposed() {
+				return race.isSettled();
+			}
+		}
+	}
+
+	// Rejects when its delay elapses before the source settles; otherwise
+	// follows the source and cancels the scheduled rejection.
+	private static class Timeout<T> extends Promise<T> implements Runnable {
+		private final Promise<T> source;
+		private final long delayMillis;
+		private volatile ScheduledFuture<?> futureOrNull;
+
+		private Timeout(Promise<T> source, long delayMillis) {
+			super(source.callbackExecutor);
+			this.source = source;
+			super.cancellerOrNull = source;
+			this.delayMillis = delayMillis;
+		}
+
+		public static <T> Promise<T> timeout(Promise<T> source, long delayMillis) {
+			final Timeout<T> timeout = new Timeout<T>(source, delayMillis);
+			source.defer(new Continuation<T>(null) {
+				@Override
+				protected void onFulfilled(T value) {
+					timeout.settled(value == null ? NIL : value);
+				}
+
+				@Override
+				protected void onRejected(Exception reason) {
+					timeout.settled(new Failure(reason));
+				}
+
+				@Override
+				protected boolean isDisposed() {
+					return timeout.isSettled();
+				}
+			});
+			if (!timeout.isSettled()) {
+				timeout.futureOrNull = schedule(timeout, delayMillis);
+				if (timeout.isSettled()) {
+					timeout.futureOrNull.cancel(false);
+				}
+			}
+			return timeout;
+		}
+
+		private void settled(Object outcome) {
+			if (super.trySettle(outcome)) {
+				unschedule();
+			}
+		}
+
+		@Override
+		void onCancel() {
+			unschedule();
+		}
+
+		private void unschedule() {
+			ScheduledFuture<?> future = futureOrNull;
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+
+		@Override
+		public void run() {
+			if (super.trySettle(new Failure(new PromiseTimeoutException(
+					delayMillis)))) {
+				source.purge();
+			}
+		}
+	}
+
+	// Fulfills once its delay elapses; cancelling it unschedules it.
+	private static class Delay extends Promise<Void> implements Runnable {
+		private volatile ScheduledFuture<?> futureOrNull;
+
+		@Override
+		public void run() {
+			super.trySettle(NIL);
+		}
+
+		@Override
+		void onCancel() {
+			ScheduledFuture<?> future = futureOrNull;
+			if (future != null) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	// One daemon thread keeping time for every delay, timeout, retry and
+	// batching window; schedule() hands what elapses to asyncExecutor().
+	// Cancelled tasks are removed from its queue right away so that timeouts
+	// outrun by their promises do not pile up.
+	private static class Scheduler {
+		private static final ScheduledThreadPoolExecutor INSTANCE;
+
+		static {
+			INSTANCE = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "QPromise-Scheduler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			INSTANCE.setRemoveOnCancelPolicy(true);
+		}
+	}
+
+	// Runs the callable of async() as a FutureTask, which takes care of
+	// interrupting only the thread running it when the promise is cancelled.
+	private static class Async<T> extends Promise<T> {
+		private final FutureTask<T> task;
+
+		@SuppressWarnings("unchecked")
+		private Async(Callable<? extends T> callable) {
+			this.task = new FutureTask<T>((Callable<T>) callable) {
+				@Override
+				protected void done() {
+					completed(this);
+				}
+			};
+		}
+
+		private void start(Executor executor) {
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				super.trySettle(new Failure(e));
+			}
+		}
+
+		private void completed(FutureTask<T> task) {
+			if (task.isCancelled()) {
+				return;
+			}
+
+			try {
+				T value = task.get();
+				super.trySettle(value == null ? NIL : value);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				Exception reason = cause instanceof Exception ? (Exception) cause
+						: e;
+				super.trySettle(new Failure(reason));
+			} catch (InterruptedException e) {
+				super.trySettle(new Failure(e));
+			}
+		}
+
+		@Override
+		void onCancel() {
+			task.cancel(true);
+		}
+	}
+
+	// Starts a thread per task: a virtual thread on JDK 21 or later, found
+	// reflectively so that the library still runs on Java 8, and otherwise a
+	// pooled daemon thread.
+	private static class AsyncExecutor {
+		private static final ExecutorService INSTANCE;
+
+		static {
+			ExecutorService executor;
+			try {
+				executor = (ExecutorService) Executors.class.getMethod(
+						"newVirtualThreadPerTaskExecutor").invoke(null);
+			} catch (Exception e) {
+				executor = Executors.newCachedThreadPool(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "QPromise-Async");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+			}
+			INSTANCE = executor;
+		}
+	}
+
+	// Bottom of the continuation stack of every pending promise while an
+	// instrumentation is installed. Being the first registered, it fires
+	// first on settlement and reports how long the promise was pending.
+	private static class Probe extends Continuation<Object> {
+		private final long createdAt = System.nanoTime();
+
+		private Probe() {
+			super(null);
+		}
+
+		@Override
+		protected void onFulfilled(Object value) {
+			INSTRUMENTATION_OR_NULL.onFulfill(System.nanoTime() - createdAt);
+		}
+
+		@Override
+		protected void onRejected(Exception reason) {
+			INSTRUMENTATION_OR_NULL.onReject(reason, System.nanoTime()
+					- createdAt);
+		}
+	}
+
+	// Sits below every other continuation of a promise sampled by the leak
+	// detector and closes its leak when it settles, unless it is rejected
+	// with nobody having attached a handler; then the promise keeps its leak
+	// in a TrackedFailure until the reason is observed.
+	private static class Tracker extends Continuation<Object> {
+		private final Promise<?> promise;
+		private final PromiseLeakDetector.Leak leak;
+		// set by purge() when it unlinks a dependent
+		private volatile boolean handled;
+
+		private Tracker(Promise<?> promise, PromiseLeakDetector.Leak leak) {
+			super(null);
+			this.promise = promise;
+			this.leak = leak;
+		}
+
+		private static Object settling(Continuation<?> continuations,
+				Object outcome) {
+			if (!(outcome instanceof Failure)) {
+				return outcome;
+			}
+			Exception reason = ((Failure) outcome).reason;
+			if (reason instanceof CancellationException) {
+				return outcome;
+			}
+
+			for (Continuation<?> continuation = continuations; continuation != null; continuation = continuation.next) {
+				if (isDependent(continuation)) {
+					return outcome;
+				}
+				if (continuation instanceof Tracker) {
+					Tracker tracker = (Tracker) continuation;
+					return tracker.handled ? outcome : new TrackedFailure(
+							reason, tracker.leak);
+				}
+			}
+			return outcome;
+		}
+
+		@Override
+		protected void onFulfilled(Object value) {
+			leak.close();
+		}
+
+		@Override
+		protected void onRejected(Exception reason) {
+			Object state = promise.state;
+			if (state instanceof TrackedFailure
+					&& ((TrackedFailure) state).leak == leak) {
+				leak.rejected(reason);
+			} else {
+				leak.close();
+			}
+		}
+	}
+
+	private static class Failure {
+		private final Exception reason;
+
+		private Failure(Exception reason) {
+			if (reason == null) {
+				throw new IllegalArgumentException();
+			}
+			this.reason = reason;
+		}
+	}
+
+	private static class TrackedFailure extends Failure {
+		private final PromiseLeakDetector.Leak leak;
+
+		private TrackedFailure(Exception reason, PromiseLeakDetector.Leak leak) {
+			super(reason);
+			this.leak = leak;
+		}
+	}
+
+	// Extensions
+
+	public static <T> Tuple4<? extends Promise<T>, ? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>> deferred() {
+		final Promise<T> promise = new Promise<T>();
+		return new Tuple4<Promise<T>, Consumer<? super T>, Consumer<? super Exception>, Consumer<? super Promise<T>>>(
+				promise, new Consumer<T>() {
+					@Override
+					public void accept(T t) {
+						promise._fulfill(t);
+					}
+				}, new Consumer<Exception>() {
+					@Override
+					public void accept(Exception t) {
+						promise._reject(t);
+					}
+				}, new Consumer<Promise<T>>() {
+					@Override
+					public void accept(Promise<T> t) {
+						promise._resolve(t);
+					}
+				});
+	}
+
+	// Like the constructor, without allocating a tuple and a consumer per
+	// callback; what the executor throws rejects the promise.
+	public static <T> Promise<T> create(
+			Consumer<? super Resolver<T>> executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("'executor' cannot be null.");
+		}
+
+		CompletablePromise<T> promise = new CompletablePromise<T>();
+		try {
+			executor.accept(promise);
+		} catch (Exception e) {
+			promise.tryFail(e);
+		}
+		return promise;
+	}
+
+	public static <T> Promise<List<T>> all(
+			Iterable<? extends Promise<T>> promises) {
+		return Join.<T, T> join(promises, false);
+	}
+
+	public static <T> Promise<List<Outcome<T>>> allSettled(
+			Iterable<? extends Promise<T>> promises) {
+		return Join.<T, Outcome<T>> join(promises, true);
+	}
+
+	public static <T> Promise<T> race(Iterable<? extends Promise<T>> promises) {
+		return Race.race(promises, false);
+	}
+
+	public static <T> Promise<T> any(Iterable<? extends Promise<T>> promises) {
+		return Race.race(promises, true);
+	}
+
+	private static Promise<?>[] toArray(Iterable<? extends Promise<?>> promises) {
+		if (promises == null) {
+			throw new IllegalArgumentException("'promises' cannot be null.");
+		}
+
+		if (promises instanceof Collection) {
+			Collection<? extends Promise<?>> collection = (Collection<? extends Promise<?>>) promises;
+			return collection.toArray(new Promise<?>[collection.size()]);
+		}
+
+		List<Promise<?>> list = new ArrayList<Promise<?>>();
+		for (Promise<?> promise : promises) {
+			list.add(promise);
+		}
+		return list.toArray(new Promise<?>[list.size()]);
+	}
+
+	public static <T> Promise<T> cancellable(
+			Consumer<? super Tuple4<? extends Consumer<? super T>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<T>>, ? extends Consumer<? super Runnable>>> executor) {
+		final Promise<T> promise = new Promise<T>();
+		executor.accept(new Tuple4<Consumer<? super T>, Consumer<? super Exception>, Consumer<? super Promise<T>>, Consumer<? super Runnable>>(
+				new Consumer<T>() {
+					@Override
+					public void accept(T t) {
+						promise._fulfill(t);
+					}
+				}, new Consumer<Exception>() {
+					@Override
+					public void accept(Exception t) {
+						promise._reject(t);
+					}
+				}, new Consumer<Promise<T>>() {
+					@Override
+					public void accept(Promise<T> t) {
+						promise._resolve(t);
+					}
+				}, new Consumer<Runnable>() {
+					@Override
+					public void accept(Runnable t) {
+						if (promise.isCancelled()) {
+							t.run();
+						} else if (!promise.isSettled()) {
+							promise.cancellerOrNull = t;
+						}
+					}
+				}));
+		return promise;
+	}
+
+	public static <T, U> Promise<List<U>> mapConcurrent(Iterable<T> items,
+			Function<? super T, ? extends Promise<U>> mapper,
+			int maxConcurrency) {
+		if (items == null) {
+			throw new IllegalArgumentException("'items' cannot be null.");
+		}
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+		if (maxConcurrency <= 0) {
+			throw new IllegalArgumentException(
+					"'maxConcurrency' must be positive.");
+		}
+
+		Window<T, U> window = new Window<T, U>(items.iterator(), mapper,
+				maxConcurrency);
+		window.drain();
+		return window;
+	}
+
+	public static <T> Promise<T> retry(
+			Supplier<? extends Promise<T>> attempt, RetryPolicy policy) {
+		if (attempt == null) {
+			throw new IllegalArgumentException("'attempt' cannot be null.");
+		}
+		if (policy == null) {
+			throw new IllegalArgumentException("'policy' cannot be null.");
+		}
+
+		Retry<T> retry = new Retry<T>(attempt, policy);
+		retry.run();
+		return retry;
+	}
+
+	public static <T> Pipeline<T, T> pipeline() {
+		return new Pipeline<T, T>(new int[0], new Object[0]);
+	}
+
+	public static <T> Promise<T> from(CompletionStage<T> stage) {
+		if (stage == null) {
+			throw new IllegalArgumentException("'stage' cannot be null.");
+		}
+
+		if (stage instanceof CompletableFuture) {
+			CompletableFuture<T> future = (CompletableFuture<T>) stage;
+			if (future.isDone()) {
+				try {
+					return fulfill(future.getNow(null));
+				} catch (CompletionException e) {
+					return reject(StagePromise.reasonOf(e));
+				} catch (CancellationException e) {
+					return reject(e);
+				}
+			}
+		}
+
+		StagePromise<T> promise = new StagePromise<T>(stage);
+		stage.whenComplete(promise);
+		return promise;
+	}
+
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<T> toCompletableFuture() {
+		Object state = this.state;
+		if (isSettled(state)) {
+			CompletableFuture<T> future = new CompletableFuture<T>();
+			if (observe(state) instanceof Failure) {
+				Exception reason = ((Failure) state).reason;
+				if (reason instanceof CancellationException) {
+					future.cancel(false);
+				} else {
+					future.completeExceptionally(reason);
+				}
+			} else {
+				future.complete(state == NIL ? null : (T) state);
+			}
+			return future;
+		}
+
+		final PromiseFuture<T> future = new PromiseFuture<T>(this);
+		defer(new Continuation<T>(null) {
+			@Override
+			protected void onFulfilled(T value) {
+				future.complete(value);
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+				if (reason instanceof CancellationException) {
+					future.cancel(false);
+				} else {
+					future.completeExceptionally(reason);
+				}
+			}
+
+			@Override
+			protected boolean isDisposed() {
+				return future.isDone();
+			}
+		});
+		return future;
+	}
+
+	public static <T> Promise<T> async(Callable<? extends T> callable) {
+		return async(callable, asyncExecutor());
+	}
+
+	// Runs the blocking callable on the executor. Cancelling the promise
+	// interrupts the callable if it is running.
+	public static <T> Promise<T> async(Callable<? extends T> callable,
+			Executor executor) {
+		if (callable == null) {
+			throw new IllegalArgumentException("'callable' cannot be null.");
+		}
+		if (executor == null) {
+			throw new IllegalArgumentException("'executor' cannot be null.");
+		}
+
+		Async<T> promise = new Async<T>(callable);
+		promise.start(executor);
+		return promise;
+	}
+
+	static Executor asyncExecutor() {
+		return AsyncExecutor.INSTANCE;
+	}
+
+	public static Promise<Void> delay(long delayMillis) {
+		if (delayMillis < 0) {
+			throw new IllegalArgumentException(
+					"'delayMillis' cannot be negative.");
+		}
+
+		Delay delay = new Delay();
+		delay.futureOrNull = schedule(delay, delayMillis);
+		if (delay.isSettled()) {
+			delay.futureOrNull.cancel(false);
+		}
+		return delay;
+	}
+
+	public Promise<T> timeout(long delayMillis) {
+		if (delayMillis < 0) {
+			throw new IllegalArgumentException(
+					"'delayMillis' cannot be negative.");
+		}
+
+		return Timeout.timeout(this, delayMillis);
+	}
+
+	static ScheduledExecutorService scheduler() {
+		return Scheduler.INSTANCE;
+	}
+
+	// Runs the task on asyncExecutor() once the delay elapses. Like
+	// CompletableFuture.delayedExecutor, the scheduler thread only keeps
+	// time, so what the task settles never holds up other timers.
+	static ScheduledFuture<?> schedule(final Runnable task, long delayMillis) {
+		return scheduler().schedule(new Runnable() {
+			@Override
+			public void run() {
+				asyncExecutor().execute(task);
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> Promise<T> fulfill(final T value) {
+		if (value == null) {
+			return (Promise<T>) NULL;
+		}
+		if (value instanceof Boolean) {
+			return (Promise<T>) (((Boolean) value).booleanValue() ? TRUE
+					: FALSE);
+		}
+		if (value instanceof Integer) {
+			int index = ((Integer) value).intValue() - INTEGER_CACHE_LOW;
+			if (index >= 0 && index < INTEGERS.length) {
+				return (Promise<T>) INTEGERS[index];
+			}
+		}
+
+		return settled(value);
+	}
+
+	public static <T> Promise<T> reject(final Exception reason) {
+		return settled(new Failure(reason));
+	}
+
+	// runs the callable right away, rejecting with what it throws
+	public static <T> Promise<T> attempt(Callable<? extends T> callable) {
+		if (callable == null) {
+			throw new IllegalArgumentException("'callable' cannot be null.");
+		}
+
+		T value;
+		try {
+			value = callable.call();
+		} catch (Exception e) {
+			return reject(e);
+		}
+		return fulfill(value);
+	}
+
+	public static <T> Promise<T> resolve(final Promise<T> promise) {
+		Promise<T> resolved = new Promise<T>();
+		resolved._resolve(promise);
+		return resolved;
+	}
+
+	private static <T> Promise<T> settled(Object outcome) {
+		return new Promise<T>(outcome, null);
 	}
 
 	public Promise<Void> then(final Consumer<? super T> onFulfilled) {
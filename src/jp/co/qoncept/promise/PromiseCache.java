@@ -0,0 +1,161 @@
+package jp.co.qoncept.promise;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+
+// Shares one promise per key among concurrent callers. Fulfilled values stay
+// cached until they expire or are evicted in insertion order once the cache
+// is full; rejected or cancelled loads, and loaders that throw, are removed
+// so that the next call retries.
+public class PromiseCache<K, V> {
+	private final Function<? super K, ? extends Promise<V>> loader;
+	private final int maxSize;
+	private final long ttlNanos;
+
+	private final ConcurrentHashMap<K, Entry<K, V>> entries = new ConcurrentHashMap<K, Entry<K, V>>();
+	private final ConcurrentLinkedQueue<Entry<K, V>> insertionOrder = new ConcurrentLinkedQueue<Entry<K, V>>();
+	private final AtomicInteger queued = new AtomicInteger();
+
+	public PromiseCache(Function<? super K, ? extends Promise<V>> loader,
+			int maxSize) {
+		this(loader, maxSize, 0L);
+	}
+
+	public PromiseCache(Function<? super K, ? extends Promise<V>> loader,
+			int maxSize, long ttlMillis) {
+		if (loader == null) {
+			throw new IllegalArgumentException("'loader' cannot be null.");
+		}
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("'maxSize' must be positive.");
+		}
+		if (ttlMillis < 0) {
+			throw new IllegalArgumentException("'ttlMillis' cannot be negative.");
+		}
+
+		this.loader = loader;
+		this.maxSize = maxSize;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+	}
+
+	public Promise<V> get(final K key) {
+		if (key == null) {
+			throw new IllegalArgumentException("'key' cannot be null.");
+		}
+
+		for (;;) {
+			Entry<K, V> entry = entries.get(key);
+			if (entry != null) {
+				if (!entry.isExpired(System.nanoTime())) {
+					return entry.promise;
+				}
+				entries.remove(key, entry);
+				continue;
+			}
+
+			CompletablePromise<V> loading = new CompletablePromise<V>();
+			final Entry<K, V> created = new Entry<K, V>(key, loading);
+			if (entries.putIfAbsent(key, created) != null) {
+				continue;
+			}
+
+			insertionOrder.add(created);
+			queued.incrementAndGet();
+			evict();
+
+			// watches the shared promise rather than the loader's, so that a
+			// caller cancelling it evicts it too
+			loading.then(new Consumer<V>() {
+				@Override
+				public void accept(V value) {
+					created.fulfilled(ttlNanos);
+				}
+			}, new Function<Exception, Promise<Void>>() {
+				@Override
+				public Promise<Void> apply(Exception reason) {
+					entries.remove(key, created);
+					return Promise.fulfill(null);
+				}
+			});
+
+			Promise<V> promise;
+			try {
+				promise = loader.apply(key);
+			} catch (Exception e) {
+				loading.fail(e);
+				return loading;
+			}
+			if (promise == null) {
+				loading.fail(new NullPointerException("'loader' returned null."));
+				return loading;
+			}
+			loading.follow(promise);
+			return loading;
+		}
+	}
+
+	public void invalidate(K key) {
+		if (key == null) {
+			throw new IllegalArgumentException("'key' cannot be null.");
+		}
+
+		entries.remove(key);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private void evict() {
+		while (entries.size() > maxSize) {
+			Entry<K, V> oldest = insertionOrder.poll();
+			if (oldest == null) {
+				break;
+			}
+			queued.decrementAndGet();
+			entries.remove(oldest.key, oldest);
+		}
+
+		// drop queue entries whose keys were invalidated, rejected or expired
+		if (queued.get() > maxSize * 2) {
+			for (Iterator<Entry<K, V>> iterator = insertionOrder.iterator(); iterator
+					.hasNext();) {
+				Entry<K, V> entry = iterator.next();
+				if (entries.get(entry.key) != entry) {
+					iterator.remove();
+					queued.decrementAndGet();
+				}
+			}
+		}
+	}
+
+	private static class Entry<K, V> {
+		private final K key;
+		private final Promise<V> promise;
+		// 0 while loading or when entries never expire
+		private volatile long expiresAt;
+
+		private Entry(K key, Promise<V> promise) {
+			this.key = key;
+			this.promise = promise;
+		}
+
+		private void fulfilled(long ttlNanos) {
+			if (ttlNanos > 0L) {
+				long expiresAt = System.nanoTime() + ttlNanos;
+				this.expiresAt = expiresAt == 0L ? 1L : expiresAt;
+			}
+		}
+
+		private boolean isExpired(long now) {
+			long expiresAt = this.expiresAt;
+			return expiresAt != 0L && now - expiresAt >= 0L;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package jp.co.qoncept.promise;
+
+// Receives events from every promise when installed by naming a subclass
+// with a public no-argument constructor in the system property
+// "jp.co.qoncept.promise.instrumentation" before Promise is first used.
+// Without it the hooks are skipped on a static final null check that the
+// JIT folds away. Promises created already settled, such as by fulfill()
+// and reject(), are not reported.
+//
+// Hooks run on the thread that triggers the event, so they must be cheap,
+// thread-safe and must not throw.
+public abstract class PromiseInstrumentation {
+	public static final String PROPERTY = "jp.co.qoncept.promise.instrumentation";
+
+	static final PromiseInstrumentation INSTALLED_OR_NULL = load();
+
+	public static PromiseInstrumentation installedOrNull() {
+		return INSTALLED_OR_NULL;
+	}
+
+	private static PromiseInstrumentation load() {
+		String className = System.getProperty(PROPERTY);
+		if (className == null || className.isEmpty()) {
+			return null;
+		}
+
+		try {
+			return (PromiseInstrumentation) Class.forName(className)
+					.getConstructor().newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot install '" + className
+					+ "' as PromiseInstrumentation.", e);
+		}
+	}
+
+	// a pending promise was created
+	protected void onCreate() {
+	}
+
+	protected void onFulfill(long pendingNanos) {
+	}
+
+	// cancellation is reported as a rejection with a CancellationException
+	protected void onReject(Exception reason, long pendingNanos) {
+	}
+
+	// a continuation was registered on a promise, whether pending or not
+	protected void onDefer() {
+	}
+}
@@ -0,0 +1,177 @@
+package jp.co.qoncept.promise;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Reports promises that are garbage-collected while still pending, and
+// rejected promises that are garbage-collected without a handler ever having
+// been attached. Install it by naming this class or a subclass with a public
+// no-argument constructor in the system property
+// "jp.co.qoncept.promise.leakDetector" before Promise is first used.
+//
+// Like Netty's ResourceLeakDetector, only one in samplingInterval pending
+// promises is tracked, through a phantom reference recording where it was
+// created; collected ones are reported when the next tracked promise is
+// created. Promises created already settled are not tracked, and
+// cancellation is never reported.
+public class PromiseLeakDetector {
+	public static final String PROPERTY = "jp.co.qoncept.promise.leakDetector";
+	public static final String SAMPLING_INTERVAL_PROPERTY = "jp.co.qoncept.promise.leakDetector.samplingInterval";
+
+	private static final int DEFAULT_SAMPLING_INTERVAL = 128;
+	private static final Logger LOGGER = Logger
+			.getLogger(PromiseLeakDetector.class.getName());
+
+	static final PromiseLeakDetector INSTALLED_OR_NULL = load();
+
+	private final int samplingInterval;
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+	// keeps the references reachable until their promises are collected
+	private final Set<Leak> leaks = Collections
+			.newSetFromMap(new ConcurrentHashMap<Leak, Boolean>());
+
+	public PromiseLeakDetector() {
+		this(Integer.getInteger(SAMPLING_INTERVAL_PROPERTY,
+				DEFAULT_SAMPLING_INTERVAL));
+	}
+
+	// 1 tracks every pending promise
+	public PromiseLeakDetector(int samplingInterval) {
+		if (samplingInterval <= 0) {
+			throw new IllegalArgumentException(
+					"'samplingInterval' must be positive.");
+		}
+
+		this.samplingInterval = samplingInterval;
+	}
+
+	public static PromiseLeakDetector installedOrNull() {
+		return INSTALLED_OR_NULL;
+	}
+
+	private static PromiseLeakDetector load() {
+		String className = System.getProperty(PROPERTY);
+		if (className == null || className.isEmpty()) {
+			return null;
+		}
+
+		try {
+			return (PromiseLeakDetector) Class.forName(className)
+					.getConstructor().newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot install '" + className
+					+ "' as PromiseLeakDetector.", e);
+		}
+	}
+
+	public int getSamplingInterval() {
+		return samplingInterval;
+	}
+
+	// the number of tracked promises that have been neither collected nor
+	// settled and handled
+	public int getTrackedCount() {
+		return leaks.size();
+	}
+
+	Leak trackOrNull(Object promise) {
+		if (samplingInterval > 1
+				&& ThreadLocalRandom.current().nextInt(samplingInterval) != 0) {
+			return null;
+		}
+
+		poll();
+		Leak leak = new Leak(promise, this);
+		leaks.add(leak);
+		return leak;
+	}
+
+	// reports the tracked promises collected so far
+	public void poll() {
+		for (Leak leak; (leak = (Leak) queue.poll()) != null;) {
+			leak.report();
+		}
+	}
+
+	protected void onNeverSettled(Throwable creationSite) {
+		LOGGER.log(Level.SEVERE,
+				"A promise was garbage-collected without being settled.\n"
+						+ stackTraceOf(creationSite));
+	}
+
+	protected void onUnhandledRejection(Exception reason, Throwable creationSite) {
+		LOGGER.log(Level.SEVERE,
+				"A promise was rejected and garbage-collected without a handler.\n"
+						+ stackTraceOf(creationSite), reason);
+	}
+
+	private static String stackTraceOf(Throwable throwable) {
+		StringWriter writer = new StringWriter();
+		throwable.printStackTrace(new PrintWriter(writer));
+		return writer.toString();
+	}
+
+	// Tracks one promise. Stays open while it is pending or rejected without
+	// a handler, and is reported if the promise is collected in that state.
+	static final class Leak extends PhantomReference<Object> {
+		@SuppressWarnings("rawtypes")
+		private static final AtomicReferenceFieldUpdater<Leak, Object> STATUS = AtomicReferenceFieldUpdater
+				.newUpdater(Leak.class, Object.class, "status");
+
+		private static final Object CLOSED = new Object();
+
+		private final PromiseLeakDetector detector;
+		private final Throwable creationSite = new Throwable(
+				"The promise was created here.");
+		// null while pending, the reason once rejected without a handler, or
+		// CLOSED
+		private volatile Object status;
+
+		private Leak(Object promise, PromiseLeakDetector detector) {
+			super(promise, detector.queue);
+			this.detector = detector;
+		}
+
+		void rejected(Exception reason) {
+			for (;;) {
+				Object status = this.status;
+				if (status == CLOSED) {
+					return;
+				}
+				if (STATUS.compareAndSet(this, status, reason)) {
+					return;
+				}
+			}
+		}
+
+		// the promise was fulfilled, cancelled or its rejection was handled
+		void close() {
+			if (STATUS.getAndSet(this, CLOSED) != CLOSED) {
+				detector.leaks.remove(this);
+				clear();
+			}
+		}
+
+		private void report() {
+			Object status = STATUS.getAndSet(this, CLOSED);
+			if (status == CLOSED || !detector.leaks.remove(this)) {
+				return;
+			}
+
+			if (status == null) {
+				detector.onNeverSettled(creationSite);
+			} else {
+				detector.onUnhandledRejection((Exception) status, creationSite);
+			}
+		}
+	}
+}
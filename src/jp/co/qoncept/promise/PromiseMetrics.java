@@ -0,0 +1,172 @@
+package jp.co.qoncept.promise;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counts promise events and records how long promises stay pending. Install
+// it with -Djp.co.qoncept.promise.instrumentation=jp.co.qoncept.promise.PromiseMetrics
+// and read it through (PromiseMetrics) PromiseInstrumentation.installedOrNull().
+public class PromiseMetrics extends PromiseInstrumentation {
+	private final LongAdder created = new LongAdder();
+	private final LongAdder fulfilled = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder cancelled = new LongAdder();
+	private final LongAdder continuations = new LongAdder();
+	private final Histogram fulfillLatency = new Histogram();
+	private final Histogram rejectLatency = new Histogram();
+
+	@Override
+	protected void onCreate() {
+		created.increment();
+	}
+
+	@Override
+	protected void onFulfill(long pendingNanos) {
+		fulfilled.increment();
+		fulfillLatency.record(pendingNanos);
+	}
+
+	@Override
+	protected void onReject(Exception reason, long pendingNanos) {
+		if (reason instanceof CancellationException) {
+			cancelled.increment();
+		} else {
+			rejected.increment();
+		}
+		rejectLatency.record(pendingNanos);
+	}
+
+	@Override
+	protected void onDefer() {
+		continuations.increment();
+	}
+
+	public long getCreatedCount() {
+		return created.sum();
+	}
+
+	public long getFulfilledCount() {
+		return fulfilled.sum();
+	}
+
+	// excludes cancellations
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	public long getCancelledCount() {
+		return cancelled.sum();
+	}
+
+	public long getContinuationCount() {
+		return continuations.sum();
+	}
+
+	// approximate while promises are being settled concurrently
+	public long getPendingCount() {
+		return created.sum() - fulfilled.sum() - rejected.sum()
+				- cancelled.sum();
+	}
+
+	public Histogram getFulfillLatency() {
+		return fulfillLatency;
+	}
+
+	// includes cancellations
+	public Histogram getRejectLatency() {
+		return rejectLatency;
+	}
+
+	// Nanosecond latencies in buckets whose width grows with their magnitude,
+	// like HdrHistogram: values below 16 are exact and larger ones are kept
+	// within 1/16 of their value, in a fixed array recorded without locks.
+	public static final class Histogram {
+		private static final int SUB_BUCKET_BITS = 4;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+		private static final int LENGTH = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+		private final AtomicLongArray counts = new AtomicLongArray(LENGTH);
+
+		Histogram() {
+		}
+
+		void record(long nanos) {
+			counts.incrementAndGet(indexOf(nanos < 0L ? 0L : nanos));
+		}
+
+		public long getCount() {
+			long count = 0L;
+			for (int i = 0; i < LENGTH; i++) {
+				count += counts.get(i);
+			}
+			return count;
+		}
+
+		// the upper bound of the bucket holding the given percentile, or 0
+		// if nothing has been recorded
+		public long getValueAtPercentile(double percentile) {
+			if (percentile < 0.0 || percentile > 100.0) {
+				throw new IllegalArgumentException(
+						"'percentile' must be between 0 and 100.");
+			}
+
+			long[] snapshot = new long[LENGTH];
+			long total = 0L;
+			for (int i = 0; i < LENGTH; i++) {
+				snapshot[i] = counts.get(i);
+				total += snapshot[i];
+			}
+			if (total == 0L) {
+				return 0L;
+			}
+
+			long rank = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+			long seen = 0L;
+			for (int i = 0; i < LENGTH; i++) {
+				seen += snapshot[i];
+				if (seen >= rank) {
+					return highestValueOf(i);
+				}
+			}
+			return highestValueOf(LENGTH - 1);
+		}
+
+		public long getMax() {
+			for (int i = LENGTH - 1; i >= 0; i--) {
+				if (counts.get(i) != 0L) {
+					return highestValueOf(i);
+				}
+			}
+			return 0L;
+		}
+
+		public void reset() {
+			for (int i = 0; i < LENGTH; i++) {
+				counts.set(i, 0L);
+			}
+		}
+
+		static int indexOf(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS))
+					& (SUB_BUCKETS - 1);
+			return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+		}
+
+		static long highestValueOf(int index) {
+			if (index < SUB_BUCKETS) {
+				return index;
+			}
+			int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+			long subBucket = index % SUB_BUCKETS;
+			int shift = exponent - SUB_BUCKET_BITS;
+			long lowest = (SUB_BUCKETS + subBucket) << shift;
+			long highest = lowest + (1L << shift) - 1L;
+			return highest < 0L ? Long.MAX_VALUE : highest;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package jp.co.qoncept.promise;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+
+// Owns the promises forked or added to it. The first child to be rejected
+// other than by cancellation cancels all the others, join() settles once
+// every child forked so far has settled, and close() cancels the children
+// still running, so that
+//
+//     try (PromiseScope scope = new PromiseScope()) {
+//         Promise<A> a = scope.fork(...);
+//         Promise<B> b = scope.fork(...);
+//         scope.join().await();
+//         ...
+//     }
+//
+// never leaves a child behind. Forked callables run through Promise.async(),
+// on a virtual thread each where the JDK has them.
+public class PromiseScope implements AutoCloseable {
+	private final Executor executor;
+	private final Queue<Promise<?>> children = new ConcurrentLinkedQueue<Promise<?>>();
+	private final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+	private volatile boolean closed;
+
+	public PromiseScope() {
+		this(Promise.asyncExecutor());
+	}
+
+	public PromiseScope(Executor executor) {
+		if (executor == null) {
+			throw new IllegalArgumentException("'executor' cannot be null.");
+		}
+
+		this.executor = executor;
+	}
+
+	public <T> Promise<T> fork(Callable<? extends T> callable) {
+		if (callable == null) {
+			throw new IllegalArgumentException("'callable' cannot be null.");
+		}
+		if (closed) {
+			throw new IllegalStateException("The scope is closed.");
+		}
+
+		return add(Promise.async(callable, executor));
+	}
+
+	public <T> Promise<T> add(Promise<T> child) {
+		if (child == null) {
+			throw new IllegalArgumentException("'child' cannot be null.");
+		}
+		if (closed) {
+			throw new IllegalStateException("The scope is closed.");
+		}
+
+		children.add(child);
+		child.then(new Consumer<T>() {
+			@Override
+			public void accept(T value) {
+			}
+		}, new Function<Exception, Promise<Void>>() {
+			@Override
+			public Promise<Void> apply(Exception reason) {
+				failed(reason);
+				return Promise.fulfill(null);
+			}
+		});
+		// forked after a sibling failed
+		if (failure.get() != null) {
+			child.cancel();
+		}
+		return child;
+	}
+
+	// Fulfills when every child added so far has fulfilled, or rejects with
+	// the first rejection once the others have settled.
+	@SuppressWarnings("unchecked")
+	public Promise<Void> join() {
+		List<Promise<Object>> children = new ArrayList<Promise<Object>>();
+		for (Promise<?> child : this.children) {
+			children.add((Promise<Object>) child);
+		}
+
+		return Promise.allSettled(children).then(
+				new Function<List<Outcome<Object>>, Promise<Void>>() {
+					@Override
+					public Promise<Void> apply(List<Outcome<Object>> outcomes) {
+						Exception reasonOrNull = failure.get();
+						if (reasonOrNull != null) {
+							return Promise.reject(reasonOrNull);
+						}
+						return Promise.fulfill(null);
+					}
+				});
+	}
+
+	// the first rejection of a child, or null
+	public Exception failureOrNull() {
+		return failure.get();
+	}
+
+	// Cancels the children that have not settled; no more can be added.
+	@Override
+	public void close() {
+		closed = true;
+		for (Promise<?> child; (child = children.poll()) != null;) {
+			child.cancel();
+		}
+	}
+
+	private void failed(Exception reason) {
+		if (reason instanceof CancellationException
+				|| !failure.compareAndSet(null, reason)) {
+			return;
+		}
+
+		for (Promise<?> child : children) {
+			child.cancel();
+		}
+	}
+}
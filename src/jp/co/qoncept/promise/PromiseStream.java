@@ -0,0 +1,225 @@
+package jp.co.qoncept.promise;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+import jp.co.qoncept.functional.Supplier;
+
+// An asynchronous sequence pulled one element at a time. next() must not be
+// called again before the promise it returned has settled; an empty Optional
+// marks the end of the stream. Elements cannot be null.
+public abstract class PromiseStream<T> {
+	public abstract Promise<Optional<T>> next();
+
+	public static <T> PromiseStream<T> of(final Iterable<? extends T> items) {
+		if (items == null) {
+			throw new IllegalArgumentException("'items' cannot be null.");
+		}
+
+		final Iterator<? extends T> iterator = items.iterator();
+		return new PromiseStream<T>() {
+			@Override
+			public Promise<Optional<T>> next() {
+				if (!iterator.hasNext()) {
+					return Promise.fulfill(Optional.<T> empty());
+				}
+				return Promise.fulfill(Optional.<T> of(iterator.next()));
+			}
+		};
+	}
+
+	public static <T> PromiseStream<T> generate(
+			final Supplier<? extends Promise<Optional<T>>> supplier) {
+		if (supplier == null) {
+			throw new IllegalArgumentException("'supplier' cannot be null.");
+		}
+
+		return new PromiseStream<T>() {
+			@Override
+			public Promise<Optional<T>> next() {
+				return supplier.get();
+			}
+		};
+	}
+
+	public <U> PromiseStream<U> map(final Function<? super T, ? extends U> mapper) {
+		if (mapper == null) {
+			throw new IllegalArgumentException("'mapper' cannot be null.");
+		}
+
+		final PromiseStream<T> source = this;
+		return new PromiseStream<U>() {
+			@Override
+			public Promise<Optional<U>> next() {
+				return source.next().map(
+						new Function<Optional<T>, Optional<U>>() {
+							@Override
+							public Optional<U> apply(Optional<T> item) {
+								if (!item.isPresent()) {
+									return Optional.empty();
+								}
+								return Optional.<U> of(mapper.apply(item.get()));
+							}
+						});
+			}
+		};
+	}
+
+	public PromiseStream<T> filter(
+			final Function<? super T, Boolean> predicate) {
+		if (predicate == null) {
+			throw new IllegalArgumentException("'predicate' cannot be null.");
+		}
+
+		final PromiseStream<T> source = this;
+		return new PromiseStream<T>() {
+			@Override
+			public Promise<Optional<T>> next() {
+				final CompletablePromise<Optional<T>> promise = new CompletablePromise<Optional<T>>();
+				new Loop<T>(source, promise) {
+					@Override
+					protected boolean step(Optional<T> item) {
+						if (item.isPresent() && !predicate.apply(item.get())) {
+							return true;
+						}
+						promise.complete(item);
+						return false;
+					}
+				}.run();
+				return promise;
+			}
+		};
+	}
+
+	public PromiseStream<List<T>> batch(final int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("'size' must be positive.");
+		}
+
+		final PromiseStream<T> source = this;
+		return new PromiseStream<List<T>>() {
+			@Override
+			public Promise<Optional<List<T>>> next() {
+				final CompletablePromise<Optional<List<T>>> promise = new CompletablePromise<Optional<List<T>>>();
+				final List<T> batch = new ArrayList<T>(size);
+				new Loop<T>(source, promise) {
+					@Override
+					protected boolean step(Optional<T> item) {
+						if (item.isPresent()) {
+							batch.add(item.get());
+							if (batch.size() < size) {
+								return true;
+							}
+						}
+						promise.complete(batch.isEmpty() ? Optional
+								.<List<T>> empty() : Optional.of(batch));
+						return false;
+					}
+				}.run();
+				return promise;
+			}
+		};
+	}
+
+	public Promise<Void> forEach(final Consumer<? super T> action) {
+		if (action == null) {
+			throw new IllegalArgumentException("'action' cannot be null.");
+		}
+
+		final CompletablePromise<Void> promise = new CompletablePromise<Void>();
+		new Loop<T>(this, promise) {
+			@Override
+			protected boolean step(Optional<T> item) {
+				if (!item.isPresent()) {
+					promise.complete(null);
+					return false;
+				}
+				action.accept(item.get());
+				return true;
+			}
+		}.run();
+		return promise;
+	}
+
+	public Promise<List<T>> toList() {
+		final List<T> list = new ArrayList<T>();
+		return forEach(new Consumer<T>() {
+			@Override
+			public void accept(T item) {
+				list.add(item);
+			}
+		}).map(new Function<Void, List<T>>() {
+			@Override
+			public List<T> apply(Void value) {
+				return list;
+			}
+		});
+	}
+
+	// Pulls from the source until step() returns false or the promise being
+	// built is settled, which a cancellation does from outside. Elements that
+	// are already available are consumed in a plain loop and the loop
+	// re-enters only from the callback of a pending element, so neither the
+	// stack nor the number of live promises grows with the length of the
+	// stream.
+	private static abstract class Loop<T> implements Runnable {
+		private final PromiseStream<T> source;
+		private final CompletablePromise<?> promise;
+
+		private Loop(PromiseStream<T> source, CompletablePromise<?> promise) {
+			this.source = source;
+			this.promise = promise;
+		}
+
+		protected abstract boolean step(Optional<T> item);
+
+		@Override
+		public void run() {
+			while (!promise.isSettled()) {
+				Promise<Optional<T>> next = source.next();
+				if (!next.isSettled()) {
+					next.then(new Consumer<Optional<T>>() {
+						@Override
+						public void accept(Optional<T> item) {
+							if (!promise.isSettled() && tryStep(item)) {
+								run();
+							}
+						}
+					}, new Function<Exception, Promise<Void>>() {
+						@Override
+						public Promise<Void> apply(Exception reason) {
+							promise.tryFail(reason);
+							return null;
+						}
+					});
+					return;
+				}
+
+				Optional<T> item;
+				try {
+					item = next.getNow(null);
+				} catch (Exception e) {
+					promise.tryFail(e);
+					return;
+				}
+				if (!tryStep(item)) {
+					return;
+				}
+			}
+		}
+
+		// a throwing predicate or action rejects the promise being built
+		private boolean tryStep(Optional<T> item) {
+			try {
+				return step(item);
+			} catch (Exception e) {
+				promise.tryFail(e);
+				return false;
+			}
+		}
+	}
+}
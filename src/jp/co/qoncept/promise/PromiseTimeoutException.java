@@ -0,0 +1,18 @@
+package jp.co.qoncept.promise;
+
+import java.util.concurrent.TimeoutException;
+
+public class PromiseTimeoutException extends TimeoutException {
+	private static final long serialVersionUID = 1L;
+
+	private final long delayMillis;
+
+	public PromiseTimeoutException(long delayMillis) {
+		super("Timed out after " + delayMillis + " ms.");
+		this.delayMillis = delayMillis;
+	}
+
+	public long getDelayMillis() {
+		return delayMillis;
+	}
+}
@@ -0,0 +1,18 @@
+package jp.co.qoncept.promise;
+
+// The settling side of a promise. complete(), fail() and follow() throw
+// IllegalStateException if the promise has already been settled other than
+// by cancellation; tryComplete() and tryFail() return false instead, so that
+// racing completers need no coordination.
+public interface Resolver<T> {
+	void complete(T value);
+
+	void fail(Exception reason);
+
+	// settles the promise as the given one settles
+	void follow(Promise<T> promise);
+
+	boolean tryComplete(T value);
+
+	boolean tryFail(Exception reason);
+}
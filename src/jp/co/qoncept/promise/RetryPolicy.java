@@ -0,0 +1,101 @@
+package jp.co.qoncept.promise;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import jp.co.qoncept.functional.Function;
+
+public final class RetryPolicy {
+	private final int maxAttempts;
+	private final long initialDelayMillis;
+	private final long maxDelayMillis;
+	private final double multiplier;
+	private final double jitter;
+	private final Function<? super Exception, Boolean> retryOnOrNull;
+
+	private RetryPolicy(int maxAttempts, long initialDelayMillis,
+			long maxDelayMillis, double multiplier, double jitter,
+			Function<? super Exception, Boolean> retryOnOrNull) {
+		this.maxAttempts = maxAttempts;
+		this.initialDelayMillis = initialDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+		this.multiplier = multiplier;
+		this.jitter = jitter;
+		this.retryOnOrNull = retryOnOrNull;
+	}
+
+	public static RetryPolicy attempts(int maxAttempts) {
+		if (maxAttempts <= 0) {
+			throw new IllegalArgumentException(
+					"'maxAttempts' must be positive.");
+		}
+
+		return new RetryPolicy(maxAttempts, 100L, 10000L, 2.0, 0.0, null);
+	}
+
+	public RetryPolicy backoff(long initialDelayMillis, long maxDelayMillis,
+			double multiplier) {
+		if (initialDelayMillis < 0 || maxDelayMillis < initialDelayMillis) {
+			throw new IllegalArgumentException("Invalid delays.");
+		}
+		if (multiplier < 1.0) {
+			throw new IllegalArgumentException(
+					"'multiplier' cannot be less than 1.");
+		}
+
+		return new RetryPolicy(maxAttempts, initialDelayMillis,
+				maxDelayMillis, multiplier, jitter, retryOnOrNull);
+	}
+
+	// each delay is shortened by a random fraction of up to 'jitter'
+	public RetryPolicy jitter(double jitter) {
+		if (jitter < 0.0 || jitter > 1.0) {
+			throw new IllegalArgumentException(
+					"'jitter' must be between 0 and 1.");
+		}
+
+		return new RetryPolicy(maxAttempts, initialDelayMillis,
+				maxDelayMillis, multiplier, jitter, retryOnOrNull);
+	}
+
+	public RetryPolicy retryOn(Function<? super Exception, Boolean> predicate) {
+		if (predicate == null) {
+			throw new IllegalArgumentException("'predicate' cannot be null.");
+		}
+
+		return new RetryPolicy(maxAttempts, initialDelayMillis,
+				maxDelayMillis, multiplier, jitter, predicate);
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	// throws what the predicate throws
+	boolean shouldRetry(int attempts, Exception reason) {
+		if (attempts >= maxAttempts) {
+			return false;
+		}
+		if (retryOnOrNull == null) {
+			return true;
+		}
+
+		Boolean retry = retryOnOrNull.apply(reason);
+		if (retry == null) {
+			throw new NullPointerException("'retryOn' returned null.");
+		}
+		return retry;
+	}
+
+	// delay before the attempt following the given number of failed ones
+	long delayMillis(int attempts) {
+		double delay = initialDelayMillis
+				* Math.pow(multiplier, attempts - 1);
+		if (delay > maxDelayMillis) {
+			delay = maxDelayMillis;
+		}
+		if (jitter > 0.0) {
+			delay -= delay * jitter * ThreadLocalRandom.current().nextDouble();
+		}
+		return (long) delay;
+	}
+}
@@ -0,0 +1,193 @@
+package jp.co.qoncept.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import jp.co.qoncept.functional.Function;
+
+import org.junit.Test;
+
+public class BatchingLoaderTest {
+	private static class Backend implements
+			Function<List<Integer>, Promise<Map<Integer, String>>> {
+		private final AtomicInteger calls = new AtomicInteger();
+		private final AtomicInteger keys = new AtomicInteger();
+		private volatile int maxKeys;
+
+		@Override
+		public Promise<Map<Integer, String>> apply(List<Integer> keys) {
+			calls.incrementAndGet();
+			this.keys.addAndGet(keys.size());
+			maxKeys = Math.max(maxKeys, keys.size());
+			Map<Integer, String> values = new HashMap<Integer, String>();
+			for (Integer key : keys) {
+				if (key >= 0) {
+					values.put(key, "v" + key);
+				}
+			}
+			return Promise.fulfill(values);
+		}
+	}
+
+	@Test
+	public void testBatches() throws Exception {
+		Backend backend = new Backend();
+		BatchingLoader<Integer, String> loader = new BatchingLoader<Integer, String>(
+				backend, 10, 10000L);
+
+		List<Promise<String>> promises = new ArrayList<Promise<String>>();
+		for (int i = 0; i < 25; i++) {
+			promises.add(loader.load(i));
+		}
+		assertEquals(2, backend.calls.get());
+		assertSame(promises.get(24), loader.load(24));
+		assertSame(promises.get(24), loader.load(24));
+		assertEquals("v19", promises.get(19).getNow(null));
+		assertFalse(promises.get(20).isSettled());
+
+		loader.dispatch();
+		assertEquals(3, backend.calls.get());
+		assertEquals(25, backend.keys.get());
+		for (int i = 0; i < 25; i++) {
+			assertEquals("v" + i, promises.get(i).getNow(null));
+		}
+
+		// missing keys
+		Promise<String> missing = loader.load(-1);
+		loader.dispatch();
+		assertTrue(missing.isSettled());
+		assertNull(missing.getNow("pending"));
+	}
+
+	@Test
+	public void testWindow() throws Exception {
+		Backend backend = new Backend();
+		BatchingLoader<Integer, String> loader = new BatchingLoader<Integer, String>(
+				backend, 1000, 20L);
+
+		Promise<String> first = loader.load(1);
+		Promise<String> second = loader.load(2);
+		assertEquals("v1", first.await(5, TimeUnit.SECONDS));
+		assertEquals("v2", second.await(5, TimeUnit.SECONDS));
+		assertEquals(1, backend.calls.get());
+	}
+
+	@Test
+	public void testConcurrentLoads() throws Exception {
+		final Backend backend = new Backend();
+		final BatchingLoader<Integer, String> loader = new BatchingLoader<Integer, String>(
+				backend, 64, 0L);
+		final AtomicReferenceArray<Promise<String>> promises = new AtomicReferenceArray<Promise<String>>(
+				8000);
+
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t * 1000;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int i = offset; i < offset + 1000; i++) {
+						promises.set(i, loader.load(i));
+					}
+				}
+			});
+			threads[t].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		for (int i = 0; i < promises.length(); i++) {
+			assertEquals("v" + i, promises.get(i).await(5, TimeUnit.SECONDS));
+		}
+		assertEquals(8000, backend.keys.get());
+		assertTrue(backend.maxKeys <= 64);
+		assertTrue(backend.calls.get() < 8000);
+	}
+
+	@Test
+	public void testRejection() throws Exception {
+		final Exception error = new Exception();
+		BatchingLoader<Integer, String> loader = new BatchingLoader<Integer, String>(
+				new Function<List<Integer>, Promise<Map<Integer, String>>>() {
+					@Override
+					public Promise<Map<Integer, String>> apply(List<Integer> keys) {
+						return Promise.reject(error);
+					}
+				}, 2, 10000L);
+
+		Promise<String> first = loader.load(1);
+		Promise<String> second = loader.load(2);
+		for (Promise<String> promise : Arrays.asList(first, second)) {
+			try {
+				promise.getNow(null);
+				fail();
+			} catch (Exception e) {
+				assertSame(error, e);
+			}
+		}
+	}
+
+	@Test
+	public void testBadResults() throws Exception {
+		final IllegalStateException thrown = new IllegalStateException();
+		final AtomicInteger calls = new AtomicInteger();
+		BatchingLoader<Integer, String> loader = new BatchingLoader<Integer, String>(
+				new Function<List<Integer>, Promise<Map<Integer, String>>>() {
+					@Override
+					public Promise<Map<Integer, String>> apply(List<Integer> keys) {
+						switch (calls.incrementAndGet()) {
+						case 1:
+							return Promise.fulfill(null);
+						case 2:
+							return null;
+						default:
+							return Promise
+									.<Map<Integer, String>> fulfill(new HashMap<Integer, String>() {
+										@Override
+										public String get(Object key) {
+											throw thrown;
+										}
+									});
+						}
+					}
+				}, 2, 10000L);
+
+		for (int i = 0; i < 3; i++) {
+			Promise<String> first = loader.load(i * 2);
+			Promise<String> second = loader.load(i * 2 + 1);
+			for (Promise<String> promise : Arrays.asList(first, second)) {
+				try {
+					promise.getNow(null);
+					fail();
+				} catch (NullPointerException e) {
+					assertTrue(i < 2);
+				} catch (IllegalStateException e) {
+					assertSame(thrown, e);
+				}
+			}
+		}
+		assertEquals(3, calls.get());
+	}
+}
@@ -0,0 +1,184 @@
+package jp.co.qoncept.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.co.qoncept.functional.Consumer;
+
+import org.junit.Test;
+
+public class CompletablePromiseTest {
+	@Test
+	public void testComplete() throws Exception {
+		CompletablePromise<Integer> promise = new CompletablePromise<Integer>();
+		assertEquals(-1, promise.getNow(-1).intValue());
+		promise.complete(2);
+		assertEquals(2, promise.getNow(-1).intValue());
+
+		CompletablePromise<Integer> nullPromise = new CompletablePromise<Integer>();
+		nullPromise.complete(null);
+		assertNull(nullPromise.getNow(-1));
+
+		try {
+			promise.complete(3);
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		assertEquals(2, promise.getNow(-1).intValue());
+	}
+
+	@Test
+	public void testFail() throws Exception {
+		Exception reason = new Exception();
+		CompletablePromise<Integer> promise = new CompletablePromise<Integer>();
+		promise.fail(reason);
+		assertSame(reason, reasonOf(promise));
+
+		try {
+			promise.fail(new Exception());
+			fail();
+		} catch (IllegalStateException e) {
+		}
+		try {
+			new CompletablePromise<Integer>().fail(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	@Test
+	public void testTryComplete() throws Exception {
+		Exception reason = new Exception();
+		CompletablePromise<Integer> promise = new CompletablePromise<Integer>();
+		assertTrue(promise.tryComplete(2));
+		assertFalse(promise.tryComplete(3));
+		assertFalse(promise.tryFail(reason));
+		assertEquals(2, promise.getNow(-1).intValue());
+
+		CompletablePromise<Integer> rejected = new CompletablePromise<Integer>();
+		assertTrue(rejected.tryFail(reason));
+		assertFalse(rejected.tryComplete(3));
+		assertSame(reason, reasonOf(rejected));
+	}
+
+	@Test
+	public void testRacingCompleters() throws Exception {
+		final int threads = 8;
+		for (int i = 0; i < 100; i++) {
+			final CompletablePromise<Integer> promise = new CompletablePromise<Integer>();
+			final CountDownLatch start = new CountDownLatch(1);
+			final CountDownLatch done = new CountDownLatch(threads);
+			final AtomicInteger winners = new AtomicInteger();
+			for (int j = 0; j < threads; j++) {
+				final int value = j;
+				new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							start.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						if (promise.tryComplete(value)) {
+							winners.incrementAndGet();
+						}
+						done.countDown();
+					}
+				}).start();
+			}
+			start.countDown();
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(1, winners.get());
+			assertTrue(promise.getNow(-1) >= 0);
+		}
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		CompletablePromise<Integer> promise = new CompletablePromise<Integer>();
+		assertTrue(promise.cancel());
+
+		// the producer need not know the promise was cancelled
+		promise.complete(2);
+		promise.fail(new Exception());
+		promise.follow(Promise.fulfill(3));
+		assertFalse(promise.tryComplete(2));
+		assertTrue(promise.isCancelled());
+	}
+
+	@Test
+	public void testFollow() throws Exception {
+		CompletablePromise<Integer> source = new CompletablePromise<Integer>();
+		CompletablePromise<Integer> promise = new CompletablePromise<Integer>();
+		promise.follow(source);
+		assertEquals(-1, promise.getNow(-1).intValue());
+		source.complete(2);
+		assertEquals(2, promise.getNow(-1).intValue());
+
+		Exception reason = new Exception();
+		CompletablePromise<Integer> rejected = new CompletablePromise<Integer>();
+		rejected.follow(Promise.<Integer> reject(reason));
+		assertSame(reason, reasonOf(rejected));
+
+		try {
+			promise.follow(Promise.fulfill(3));
+			fail();
+		} catch (IllegalStateException e) {
+		}
+
+		// cancelling the follower cancels the followed promise
+		CompletablePromise<Integer> followed = new CompletablePromise<Integer>();
+		CompletablePromise<Integer> follower = new CompletablePromise<Integer>();
+		follower.follow(followed);
+		follower.cancel();
+		assertTrue(followed.isCancelled());
+	}
+
+	@Test
+	public void testCreate() throws Exception {
+		Promise<Integer> promise = Promise.create(new Consumer<Resolver<Integer>>() {
+			@Override
+			public void accept(Resolver<Integer> resolver) {
+				resolver.complete(2);
+			}
+		});
+		assertEquals(2, promise.getNow(-1).intValue());
+
+		final Exception reason = new Exception();
+		Promise<Integer> thrown = Promise.create(new Consumer<Resolver<Integer>>() {
+			@Override
+			public void accept(Resolver<Integer> resolver) {
+				throw new IllegalStateException();
+			}
+		});
+		assertTrue(reasonOf(thrown) instanceof IllegalStateException);
+
+		// what is thrown after settling is ignored
+		Promise<Integer> settled = Promise.create(new Consumer<Resolver<Integer>>() {
+			@Override
+			public void accept(Resolver<Integer> resolver) {
+				resolver.fail(reason);
+				throw new IllegalStateException();
+			}
+		});
+		assertSame(reason, reasonOf(settled));
+	}
+
+	private static Exception reasonOf(Promise<?> promise) {
+		try {
+			promise.getNow(null);
+		} catch (Exception e) {
+			return e;
+		}
+		fail();
+		return null;
+	}
+}
@@ -0,0 +1,185 @@
+package jp.co.qoncept.promise;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongToDoubleFunction;
+import java.util.function.ToIntFunction;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.util.Tuple4;
+
+import org.junit.Test;
+
+public class PrimitivePromiseTest {
+	private static final IntUnaryOperator INCREMENT = new IntUnaryOperator() {
+		@Override
+		public int applyAsInt(int value) {
+			return value + 1;
+		}
+	};
+
+	@Test
+	public void testMap() throws Exception {
+		Tuple4<? extends Promise<String>, ? extends Consumer<? super String>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<String>>> deferred = Promise
+				.deferred();
+		IntPromise promise = deferred.get0().mapToInt(
+				new ToIntFunction<String>() {
+					@Override
+					public int applyAsInt(String value) {
+						return value.length();
+					}
+				});
+		for (int i = 0; i < 10; i++) {
+			promise = promise.map(INCREMENT);
+		}
+		DoublePromise converted = promise.mapToLong(new IntToLongFunction() {
+			@Override
+			public long applyAsLong(int value) {
+				return value * 1000000000000L;
+			}
+		}).mapToDouble(new LongToDoubleFunction() {
+			@Override
+			public double applyAsDouble(long value) {
+				return value / 4.0;
+			}
+		});
+		Promise<String> string = promise.mapToObj(new IntFunction<String>() {
+			@Override
+			public String apply(int value) {
+				return "v" + value;
+			}
+		});
+		assertEquals(-1, promise.getNow(-1));
+
+		deferred.get1().accept("abc");
+		assertEquals(13, promise.getNow(-1));
+		assertEquals(3250000000000.0, converted.getNow(-1.0), 0.0);
+		assertEquals("v13", string.getNow(null));
+		assertEquals(Integer.valueOf(13), promise.boxed().getNow(null));
+	}
+
+	@Test
+	public void testRejection() throws Exception {
+		final Exception error = new Exception();
+		final RuntimeException thrown = new RuntimeException();
+
+		IntPromise rejected = Promise.<String> reject(error).mapToInt(
+				new ToIntFunction<String>() {
+					@Override
+					public int applyAsInt(String value) {
+						fail();
+						return 0;
+					}
+				}).map(INCREMENT);
+		try {
+			rejected.getNow(-1);
+			fail();
+		} catch (Exception e) {
+			assertSame(error, e);
+		}
+
+		DoublePromise throwing = DoublePromise.fulfill(1.0).map(
+				new DoubleUnaryOperator() {
+					@Override
+					public double applyAsDouble(double value) {
+						throw thrown;
+					}
+				});
+		try {
+			throwing.getNow(-1.0);
+			fail();
+		} catch (RuntimeException e) {
+			assertSame(thrown, e);
+		}
+
+		IntPromise recovered = rejected.recover(new ToIntFunction<Exception>() {
+			@Override
+			public int applyAsInt(Exception reason) {
+				assertSame(error, reason);
+				return -2;
+			}
+		});
+		assertEquals(-2, recovered.getNow(0));
+	}
+
+	@Test
+	public void testAll() throws Exception {
+		List<IntPromise> promises = new ArrayList<IntPromise>();
+		for (int i = 0; i < 100; i++) {
+			promises.add(Promise.delay(i % 10).mapToInt(
+					new ToIntFunction<Void>() {
+						@Override
+						public int applyAsInt(Void value) {
+							return 1;
+						}
+					}).map(INCREMENT));
+		}
+		int[] values = IntPromise.all(promises).await(5, TimeUnit.SECONDS);
+		assertEquals(100, values.length);
+		for (int value : values) {
+			assertEquals(2, value);
+		}
+
+		assertArrayEquals(new long[] { 1L, 2L }, LongPromise.all(
+				Arrays.asList(LongPromise.fulfill(1L), LongPromise.fulfill(2L)))
+				.getNow(null));
+		assertEquals(0, IntPromise.all(new ArrayList<IntPromise>())
+				.getNow(null).length);
+
+		Exception error = new Exception();
+		try {
+			IntPromise.all(
+					Arrays.asList(IntPromise.fulfill(1),
+							IntPromise.reject(error), IntPromise.reject(error)))
+					.getNow(null);
+			fail();
+		} catch (Exception e) {
+			assertSame(error, e);
+		}
+	}
+
+	@Test
+	public void testAwait() throws Exception {
+		IntPromise promise = Promise.delay(10).mapToInt(
+				new ToIntFunction<Void>() {
+					@Override
+					public int applyAsInt(Void value) {
+						return 7;
+					}
+				});
+		assertEquals(7, promise.await());
+		assertEquals(7, promise.await(1, TimeUnit.SECONDS));
+		assertTrue(promise.isSettled());
+	}
+
+	@Test
+	public void testLongChain() throws Exception {
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		IntPromise promise = deferred.get0().mapToInt(
+				new ToIntFunction<Integer>() {
+					@Override
+					public int applyAsInt(Integer value) {
+						return value;
+					}
+				});
+		for (int i = 0; i < 1000000; i++) {
+			promise = promise.map(INCREMENT);
+		}
+
+		deferred.get1().accept(0);
+		assertEquals(1000000, promise.getNow(-1));
+	}
+}
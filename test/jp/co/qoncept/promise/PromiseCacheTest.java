@@ -0,0 +1,201 @@
+package jp.co.qoncept.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+import jp.co.qoncept.util.Tuple4;
+
+import org.junit.Test;
+
+public class PromiseCacheTest {
+	@Test
+	public void testSingleFlight() throws Exception {
+		final AtomicInteger loads = new AtomicInteger();
+		final Tuple4<? extends Promise<String>, ? extends Consumer<? super String>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<String>>> deferred = Promise
+				.deferred();
+		final PromiseCache<Integer, String> cache = new PromiseCache<Integer, String>(
+				new Function<Integer, Promise<String>>() {
+					@Override
+					public Promise<String> apply(Integer key) {
+						loads.incrementAndGet();
+						return deferred.get0();
+					}
+				}, 100);
+
+		final CountDownLatch start = new CountDownLatch(1);
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for (int j = 0; j < 1000; j++) {
+						cache.get(1);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(1, loads.get());
+		deferred.get1().accept("one");
+		assertEquals("one", cache.get(1).await());
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testRejectionIsNotCached() throws Exception {
+		final Exception error = new Exception();
+		final AtomicInteger loads = new AtomicInteger();
+		PromiseCache<Integer, String> cache = new PromiseCache<Integer, String>(
+				new Function<Integer, Promise<String>>() {
+					@Override
+					public Promise<String> apply(Integer key) {
+						return loads.incrementAndGet() == 1 ? Promise
+								.<String> reject(error) : Promise.fulfill("v"
+								+ key);
+					}
+				}, 100);
+
+		try {
+			cache.get(1).await();
+			fail("Never reaches here.");
+		} catch (Exception e) {
+			assertEquals(error, e);
+		}
+		assertEquals(0, cache.size());
+		assertEquals("v1", cache.get(1).await());
+		assertEquals("v1", cache.get(1).await());
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testLoaderFailureIsNotCached() throws Exception {
+		final IllegalStateException thrown = new IllegalStateException();
+		final AtomicInteger loads = new AtomicInteger();
+		PromiseCache<Integer, String> cache = new PromiseCache<Integer, String>(
+				new Function<Integer, Promise<String>>() {
+					@Override
+					public Promise<String> apply(Integer key) {
+						switch (loads.incrementAndGet()) {
+						case 1:
+							throw thrown;
+						case 2:
+							return null;
+						default:
+							return Promise.fulfill("v" + key);
+						}
+					}
+				}, 100);
+
+		try {
+			cache.get(1).await();
+			fail("Never reaches here.");
+		} catch (IllegalStateException e) {
+			assertSame(thrown, e);
+		}
+		assertEquals(0, cache.size());
+		try {
+			cache.get(1).await();
+			fail("Never reaches here.");
+		} catch (NullPointerException e) {
+		}
+		assertEquals(0, cache.size());
+		assertEquals("v1", cache.get(1).await());
+		assertEquals(3, loads.get());
+	}
+
+	@Test
+	public void testCancellationIsNotCached() throws Exception {
+		final AtomicInteger loads = new AtomicInteger();
+		final CompletablePromise<String> first = new CompletablePromise<String>();
+		PromiseCache<Integer, String> cache = new PromiseCache<Integer, String>(
+				new Function<Integer, Promise<String>>() {
+					@Override
+					public Promise<String> apply(Integer key) {
+						return loads.incrementAndGet() == 1 ? first : Promise
+								.fulfill("v" + key);
+					}
+				}, 100);
+
+		// cancelling what a caller derived leaves the shared load alone
+		Promise<String> derived = cache.get(1).map(
+				new Function<String, String>() {
+					@Override
+					public String apply(String value) {
+						return value;
+					}
+				});
+		derived.cancel();
+		Promise<String> shared = cache.get(1);
+		assertEquals(1, loads.get());
+		assertFalse(shared.isSettled());
+
+		// cancelling the shared promise itself evicts it
+		shared.cancel();
+		assertEquals(0, cache.size());
+		assertEquals("v1", cache.get(1).await());
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		final AtomicInteger loads = new AtomicInteger();
+		PromiseCache<Integer, Integer> cache = new PromiseCache<Integer, Integer>(
+				new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer key) {
+						loads.incrementAndGet();
+						return Promise.fulfill(key);
+					}
+				}, 2);
+
+		Promise<Integer> first = cache.get(1);
+		assertSame(first, cache.get(1));
+		cache.get(2);
+		cache.get(3);
+		assertEquals(2, cache.size());
+		assertEquals(3, loads.get());
+		cache.get(1);
+		assertEquals(4, loads.get());
+
+		cache.invalidate(1);
+		cache.get(1);
+		assertEquals(5, loads.get());
+	}
+
+	@Test
+	public void testExpiration() throws Exception {
+		final AtomicInteger loads = new AtomicInteger();
+		PromiseCache<Integer, Integer> cache = new PromiseCache<Integer, Integer>(
+				new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer key) {
+						loads.incrementAndGet();
+						return Promise.fulfill(key);
+					}
+				}, 100, 20);
+
+		cache.get(1);
+		cache.get(1);
+		assertEquals(1, loads.get());
+		Thread.sleep(40);
+		cache.get(1);
+		assertEquals(2, loads.get());
+	}
+}
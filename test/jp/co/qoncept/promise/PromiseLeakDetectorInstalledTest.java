@@ -0,0 +1,151 @@
+package jp.co.qoncept.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// Runs in a JVM of its own with RecordingDetector installed; see the
+// leak-detector-installed execution in pom.xml.
+public class PromiseLeakDetectorInstalledTest {
+	private RecordingDetector detector;
+
+	@Before
+	public void setUp() {
+		assumeTrue(PromiseLeakDetector.installedOrNull() instanceof RecordingDetector);
+		detector = (RecordingDetector) PromiseLeakDetector.installedOrNull();
+	}
+
+	@Test
+	public void testNeverSettled() throws Exception {
+		int neverSettled = detector.neverSettled.get();
+		abandon();
+		collect(neverSettled + 1, detector.unhandledRejections.size());
+		assertEquals(neverSettled + 1, detector.neverSettled.get());
+	}
+
+	@Test
+	public void testUnhandledRejection() throws Exception {
+		Exception reason = new Exception();
+		int neverSettled = detector.neverSettled.get();
+		int unhandledRejections = detector.unhandledRejections.size();
+		rejectUnhandled(reason);
+		collect(neverSettled, unhandledRejections + 1);
+		assertEquals(unhandledRejections + 1,
+				detector.unhandledRejections.size());
+		assertSame(reason, detector.unhandledRejections.get(unhandledRejections));
+	}
+
+	@Test
+	public void testHandled() throws Exception {
+		int neverSettled = detector.neverSettled.get();
+		int unhandledRejections = detector.unhandledRejections.size();
+		settleHandled();
+		// one abandoned promise tells when the others have been collected too
+		abandon();
+		collect(neverSettled + 1, unhandledRejections);
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(10L);
+			detector.poll();
+		}
+		assertEquals(neverSettled + 1, detector.neverSettled.get());
+		assertEquals(unhandledRejections, detector.unhandledRejections.size());
+		assertEquals(0, detector.getTrackedCount());
+	}
+
+	private static void abandon() {
+		new CompletablePromise<Integer>();
+	}
+
+	private static void rejectUnhandled(Exception reason) {
+		new CompletablePromise<Integer>().fail(reason);
+	}
+
+	private static void settleHandled() throws Exception {
+		new CompletablePromise<Integer>().complete(1);
+		new CompletablePromise<Integer>().cancel();
+
+		// handled by a dependent
+		CompletablePromise<Integer> caught = new CompletablePromise<Integer>();
+		caught.then(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+			}
+		}, new Function<Exception, Promise<Void>>() {
+			@Override
+			public Promise<Void> apply(Exception reason) {
+				return Promise.fulfill(null);
+			}
+		});
+		caught.fail(new Exception());
+
+		// handled by a dependent attached after the rejection
+		CompletablePromise<Integer> recovered = new CompletablePromise<Integer>();
+		recovered.fail(new Exception());
+		recovered.recover(new Function<Exception, Integer>() {
+			@Override
+			public Integer apply(Exception reason) {
+				return -1;
+			}
+		});
+
+		// observed by reading it
+		CompletablePromise<Integer> read = new CompletablePromise<Integer>();
+		read.fail(new Exception());
+		try {
+			read.getNow(-1);
+		} catch (Exception e) {
+		}
+
+		// handled by a dependent that went away before the rejection, which
+		// purge() unlinked
+		CompletablePromise<Integer> timedOut = new CompletablePromise<Integer>();
+		try {
+			timedOut.timeout(1).await(1, TimeUnit.SECONDS);
+		} catch (PromiseTimeoutException e) {
+		}
+		timedOut.fail(new Exception());
+	}
+
+	private void collect(int neverSettled, int unhandledRejections)
+			throws InterruptedException {
+		for (int i = 0; i < 100
+				&& (detector.neverSettled.get() < neverSettled || detector.unhandledRejections
+						.size() < unhandledRejections); i++) {
+			System.gc();
+			Thread.sleep(10L);
+			detector.poll();
+		}
+	}
+
+	public static class RecordingDetector extends PromiseLeakDetector {
+		private final AtomicInteger neverSettled = new AtomicInteger();
+		private final List<Exception> unhandledRejections = new CopyOnWriteArrayList<Exception>();
+
+		public RecordingDetector() {
+			super(1);
+		}
+
+		@Override
+		protected void onNeverSettled(Throwable creationSite) {
+			neverSettled.incrementAndGet();
+		}
+
+		@Override
+		protected void onUnhandledRejection(Exception reason,
+				Throwable creationSite) {
+			unhandledRejections.add(reason);
+		}
+	}
+}
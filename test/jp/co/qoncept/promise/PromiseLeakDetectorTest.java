@@ -0,0 +1,83 @@
+package jp.co.qoncept.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PromiseLeakDetectorTest {
+	@Test
+	public void testReports() throws Exception {
+		Exception reason = new Exception();
+		RecordingDetector detector = new RecordingDetector();
+		detector.trackOrNull(new Object());
+		detector.trackOrNull(new Object()).rejected(reason);
+		detector.trackOrNull(new Object()).close();
+		PromiseLeakDetector.Leak rejectedAndHandled = detector
+				.trackOrNull(new Object());
+		rejectedAndHandled.rejected(new Exception());
+		rejectedAndHandled.close();
+		assertEquals(2, detector.getTrackedCount());
+
+		collect(detector, 2);
+		assertEquals(1, detector.neverSettled);
+		assertEquals(1, detector.unhandledRejections.size());
+		assertSame(reason, detector.unhandledRejections.get(0));
+		assertEquals(0, detector.getTrackedCount());
+	}
+
+	@Test
+	public void testSampling() {
+		PromiseLeakDetector detector = new PromiseLeakDetector(1000000);
+		List<Object> promises = new ArrayList<Object>();
+		for (int i = 0; i < 100; i++) {
+			Object promise = new Object();
+			promises.add(promise);
+			detector.trackOrNull(promise);
+		}
+		assertEquals(1000000, detector.getSamplingInterval());
+		assertTrue(detector.getTrackedCount() < 100);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSamplingInterval() {
+		new PromiseLeakDetector(0);
+	}
+
+	private static void collect(RecordingDetector detector, int reports)
+			throws InterruptedException {
+		for (int i = 0; i < 100 && detector.reports() < reports; i++) {
+			System.gc();
+			Thread.sleep(10L);
+			detector.poll();
+		}
+	}
+
+	private static class RecordingDetector extends PromiseLeakDetector {
+		private int neverSettled;
+		private final List<Exception> unhandledRejections = new ArrayList<Exception>();
+
+		private RecordingDetector() {
+			super(1);
+		}
+
+		private int reports() {
+			return neverSettled + unhandledRejections.size();
+		}
+
+		@Override
+		protected void onNeverSettled(Throwable creationSite) {
+			neverSettled++;
+		}
+
+		@Override
+		protected void onUnhandledRejection(Exception reason,
+				Throwable creationSite) {
+			unhandledRejections.add(reason);
+		}
+	}
+}
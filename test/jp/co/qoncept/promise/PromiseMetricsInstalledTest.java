@@ -0,0 +1,86 @@
+package jp.co.qoncept.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import jp.co.qoncept.functional.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// Runs in a JVM of its own with PromiseMetrics installed; see the
+// metrics-installed execution in pom.xml.
+public class PromiseMetricsInstalledTest {
+	private PromiseMetrics metrics;
+
+	@Before
+	public void setUp() {
+		assumeTrue(PromiseInstrumentation.installedOrNull() instanceof PromiseMetrics);
+		metrics = (PromiseMetrics) PromiseInstrumentation.installedOrNull();
+	}
+
+	@Test
+	public void testCounts() throws Exception {
+		long created = metrics.getCreatedCount();
+		long fulfilled = metrics.getFulfilledCount();
+		long rejected = metrics.getRejectedCount();
+		long cancelled = metrics.getCancelledCount();
+		long pending = metrics.getPendingCount();
+		long fulfillLatencies = metrics.getFulfillLatency().getCount();
+		long rejectLatencies = metrics.getRejectLatency().getCount();
+
+		new CompletablePromise<Integer>().complete(1);
+		new CompletablePromise<Integer>().fail(new Exception());
+		new CompletablePromise<Integer>().cancel();
+		CompletablePromise<Integer> open = new CompletablePromise<Integer>();
+		// created already settled, so not reported
+		Promise.fulfill(1000);
+		Promise.reject(new Exception());
+
+		assertEquals(created + 4, metrics.getCreatedCount());
+		assertEquals(fulfilled + 1, metrics.getFulfilledCount());
+		assertEquals(rejected + 1, metrics.getRejectedCount());
+		assertEquals(cancelled + 1, metrics.getCancelledCount());
+		assertEquals(pending + 1, metrics.getPendingCount());
+		assertEquals(fulfillLatencies + 1, metrics.getFulfillLatency()
+				.getCount());
+		assertEquals(rejectLatencies + 2, metrics.getRejectLatency()
+				.getCount());
+
+		open.complete(2);
+		assertEquals(pending, metrics.getPendingCount());
+	}
+
+	@Test
+	public void testContinuations() throws Exception {
+		long continuations = metrics.getContinuationCount();
+		CompletablePromise<Integer> promise = new CompletablePromise<Integer>();
+		Promise<Integer> mapped = promise.map(new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer value) {
+				return value + 1;
+			}
+		});
+		promise.complete(1);
+		assertEquals(2, mapped.getNow(-1).intValue());
+		assertEquals(continuations + 1, metrics.getContinuationCount());
+	}
+
+	@Test
+	public void testCancelPropagation() throws Exception {
+		long cancelled = metrics.getCancelledCount();
+		CompletablePromise<Integer> source = new CompletablePromise<Integer>();
+		Promise<Integer> mapped = source.map(new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer value) {
+				return value + 1;
+			}
+		});
+
+		// the probe left at the bottom of the source is not a dependent
+		assertTrue(mapped.cancel());
+		assertTrue(source.isCancelled());
+		assertEquals(cancelled + 2, metrics.getCancelledCount());
+	}
+}
@@ -0,0 +1,67 @@
+package jp.co.qoncept.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+public class PromiseMetricsTest {
+	@Test
+	public void testCounters() {
+		PromiseMetrics metrics = new PromiseMetrics();
+		for (int i = 0; i < 5; i++) {
+			metrics.onCreate();
+		}
+		metrics.onDefer();
+		metrics.onFulfill(100L);
+		metrics.onFulfill(200L);
+		metrics.onReject(new Exception(), 300L);
+		metrics.onReject(new CancellationException(), 400L);
+
+		assertEquals(5, metrics.getCreatedCount());
+		assertEquals(2, metrics.getFulfilledCount());
+		assertEquals(1, metrics.getRejectedCount());
+		assertEquals(1, metrics.getCancelledCount());
+		assertEquals(1, metrics.getContinuationCount());
+		assertEquals(1, metrics.getPendingCount());
+		assertEquals(2, metrics.getFulfillLatency().getCount());
+		assertEquals(2, metrics.getRejectLatency().getCount());
+	}
+
+	@Test
+	public void testHistogram() {
+		PromiseMetrics.Histogram histogram = new PromiseMetrics().getFulfillLatency();
+		assertEquals(0, histogram.getValueAtPercentile(50.0));
+
+		for (long value = 1; value <= 1000; value++) {
+			histogram.record(value * 1000L);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertWithin(500000L, histogram.getValueAtPercentile(50.0));
+		assertWithin(990000L, histogram.getValueAtPercentile(99.0));
+		assertWithin(1000000L, histogram.getMax());
+
+		histogram.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, histogram.getMax());
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+	}
+
+	@Test
+	public void testBuckets() {
+		for (long value = 0; value < 100000; value++) {
+			int index = PromiseMetrics.Histogram.indexOf(value);
+			long highest = PromiseMetrics.Histogram.highestValueOf(index);
+			assertTrue(value <= highest);
+			assertTrue(highest - value <= value / 16);
+		}
+	}
+
+	private static void assertWithin(long expected, long actual) {
+		assertTrue(actual + " is not close to " + expected,
+				actual >= expected && actual - expected <= expected / 16);
+	}
+}
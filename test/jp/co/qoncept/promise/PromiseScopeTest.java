@@ -0,0 +1,113 @@
+package jp.co.qoncept.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class PromiseScopeTest {
+	@Test
+	public void testJoin() throws Exception {
+		List<Promise<Integer>> children = new ArrayList<Promise<Integer>>();
+		try (PromiseScope scope = new PromiseScope()) {
+			for (int i = 0; i < 100; i++) {
+				final int value = i;
+				children.add(scope.fork(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						Thread.sleep(10L);
+						return value;
+					}
+				}));
+			}
+			scope.join().await(5, TimeUnit.SECONDS);
+		}
+
+		for (int i = 0; i < children.size(); i++) {
+			assertEquals(i, children.get(i).getNow(-1).intValue());
+		}
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		final Exception error = new Exception();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+
+		try (PromiseScope scope = new PromiseScope()) {
+			Promise<Void> sibling = scope.fork(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					started.countDown();
+					try {
+						Thread.sleep(10000L);
+					} catch (InterruptedException e) {
+						interrupted.countDown();
+						throw e;
+					}
+					return null;
+				}
+			});
+			// a callable cancelled before it starts is never run, let alone
+			// interrupted
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			scope.fork(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					throw error;
+				}
+			});
+
+			try {
+				scope.join().await(5, TimeUnit.SECONDS);
+				fail();
+			} catch (Exception e) {
+				assertSame(error, e);
+			}
+			assertTrue(sibling.isCancelled());
+			assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+			assertSame(error, scope.failureOrNull());
+
+			// children added after the failure are cancelled right away
+			Promise<Void> late = scope.add(Promise.<Void> deferred().get0());
+			assertTrue(late.isCancelled());
+		}
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		Promise<Void> child;
+		PromiseScope scope = new PromiseScope();
+		try {
+			child = scope.fork(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					Thread.sleep(10000L);
+					return null;
+				}
+			});
+		} finally {
+			scope.close();
+		}
+		assertTrue(child.isCancelled());
+
+		try {
+			scope.fork(new Callable<Void>() {
+				@Override
+				public Void call() {
+					return null;
+				}
+			});
+			fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+}
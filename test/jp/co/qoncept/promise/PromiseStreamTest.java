@@ -0,0 +1,186 @@
+package jp.co.qoncept.promise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import jp.co.qoncept.functional.Consumer;
+import jp.co.qoncept.functional.Function;
+import jp.co.qoncept.functional.Supplier;
+
+import org.junit.Test;
+
+public class PromiseStreamTest {
+	private static PromiseStream<Integer> asyncRange(final int end) {
+		final int[] next = { 0 };
+		return PromiseStream.generate(new Supplier<Promise<Optional<Integer>>>() {
+			@Override
+			public Promise<Optional<Integer>> get() {
+				final int value = next[0]++;
+				return Promise.delay(1).map(
+						new Function<Void, Optional<Integer>>() {
+							@Override
+							public Optional<Integer> apply(Void t) {
+								return value < end ? Optional.of(value)
+										: Optional.<Integer> empty();
+							}
+						});
+			}
+		});
+	}
+
+	@Test
+	public void testOperators() throws Exception {
+		List<Integer> items = new ArrayList<Integer>();
+		for (int i = 0; i < 10; i++) {
+			items.add(i);
+		}
+
+		List<List<Integer>> batches = PromiseStream.of(items)
+				.filter(new Function<Integer, Boolean>() {
+					@Override
+					public Boolean apply(Integer value) {
+						return value % 2 == 0;
+					}
+				}).map(new Function<Integer, Integer>() {
+					@Override
+					public Integer apply(Integer value) {
+						return value * 10;
+					}
+				}).batch(2).toList().await();
+
+		assertEquals(
+				Arrays.asList(Arrays.asList(0, 20), Arrays.asList(40, 60),
+						Arrays.asList(80)), batches);
+	}
+
+	@Test
+	public void testAsyncSource() throws Exception {
+		final int[] sum = { 0 };
+		asyncRange(50).filter(new Function<Integer, Boolean>() {
+			@Override
+			public Boolean apply(Integer value) {
+				return value % 5 == 0;
+			}
+		}).forEach(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				sum[0] += value;
+			}
+		}).await();
+
+		assertEquals(225, sum[0]);
+	}
+
+	@Test
+	public void testLongStream() throws Exception {
+		final int length = 1000000;
+		final int[] next = { 0 };
+		final int[] count = { 0 };
+
+		PromiseStream.generate(new Supplier<Promise<Optional<Integer>>>() {
+			@Override
+			public Promise<Optional<Integer>> get() {
+				int value = next[0]++;
+				return Promise.fulfill(value < length ? Optional.of(value)
+						: Optional.<Integer> empty());
+			}
+		}).filter(new Function<Integer, Boolean>() {
+			@Override
+			public Boolean apply(Integer value) {
+				return value % 1000 == 0;
+			}
+		}).forEach(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				count[0]++;
+			}
+		}).await();
+
+		assertEquals(length / 1000, count[0]);
+	}
+
+	@Test
+	public void testRejection() {
+		final Exception error = new Exception();
+
+		try {
+			PromiseStream.generate(new Supplier<Promise<Optional<Integer>>>() {
+				@Override
+				public Promise<Optional<Integer>> get() {
+					return Promise.reject(error);
+				}
+			}).batch(3).toList().await();
+			fail("Never reaches here.");
+		} catch (Exception e) {
+			assertEquals(error, e);
+		}
+	}
+
+	@Test
+	public void testThrowingAction() throws Exception {
+		final RuntimeException error = new RuntimeException();
+		try {
+			asyncRange(10).forEach(new Consumer<Integer>() {
+				@Override
+				public void accept(Integer value) {
+					if (value == 3) {
+						throw error;
+					}
+				}
+			}).await(1, TimeUnit.SECONDS);
+			fail();
+		} catch (RuntimeException e) {
+			assertSame(error, e);
+		}
+	}
+
+	@Test
+	public void testCancellation() throws Exception {
+		final List<CompletablePromise<Optional<Integer>>> pulls = new ArrayList<CompletablePromise<Optional<Integer>>>();
+		PromiseStream<Integer> source = PromiseStream
+				.generate(new Supplier<Promise<Optional<Integer>>>() {
+					@Override
+					public Promise<Optional<Integer>> get() {
+						CompletablePromise<Optional<Integer>> pull = new CompletablePromise<Optional<Integer>>();
+						pulls.add(pull);
+						return pull;
+					}
+				});
+
+		final List<Integer> items = new ArrayList<Integer>();
+		Promise<Void> promise = source.forEach(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer item) {
+				items.add(item);
+			}
+		});
+		assertEquals(1, pulls.size());
+		pulls.get(0).complete(Optional.of(0));
+		assertEquals(2, pulls.size());
+
+		// the loop stops pulling once the promise it builds is cancelled
+		promise.cancel();
+		pulls.get(1).complete(Optional.of(1));
+		assertEquals(2, pulls.size());
+		assertEquals(Arrays.asList(0), items);
+
+		Promise<Optional<Integer>> filtered = source.filter(
+				new Function<Integer, Boolean>() {
+					@Override
+					public Boolean apply(Integer item) {
+						return item > 10;
+					}
+				}).next();
+		assertEquals(3, pulls.size());
+		filtered.cancel();
+		pulls.get(2).complete(Optional.of(2));
+		assertEquals(3, pulls.size());
+	}
+}
@@ -1,28 +1,55 @@
 package jp.co.qoncept.promise;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
 
 import jp.co.qoncept.functional.Consumer;
 import jp.co.qoncept.functional.Function;
 import jp.co.qoncept.functional.Supplier;
 import jp.co.qoncept.util.Tuple3;
+import jp.co.qoncept.util.Tuple4;
 
 import org.junit.Test;
 
 public class PromiseTest {
+	private static final Timer TIMER = new Timer(true);
+
 	public Promise<Integer> asyncSucceed(final Integer value) {
 		return new Promise<Integer>(
 				new Consumer<Tuple3<? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>>>() {
 					@Override
 					public void accept(
 							final Tuple3<? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> executor) {
-						new Timer().schedule(new TimerTask() {
+						TIMER.schedule(new TimerTask() {
 							@Override
 							public void run() {
 								executor.get0().accept(value + 1);
@@ -38,7 +65,7 @@ public class PromiseTest {
 					@Override
 					public void accept(
 							final Tuple3<? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> executor) {
-						new Timer().schedule(new TimerTask() {
+						TIMER.schedule(new TimerTask() {
 							@Override
 							public void run() {
 								executor.get1().accept(reason);
@@ -423,22 +450,1505 @@ public class PromiseTest {
 		assertEquals(3, reach[0]);
 	}
 
-	private static <T> void wait(Promise<T> promise) {
-		final boolean[] finished = { false };
+	@Test
+	public void testSettledPromises() {
+		final Exception error = new Exception();
+		final int[] reach = new int[1];
+
+		assertSame(Promise.fulfill(null), Promise.fulfill(null));
+		assertSame(Promise.fulfill(true), Promise.fulfill(true));
+		assertNotSame(Promise.fulfill(true), Promise.fulfill(false));
+		assertSame(Promise.fulfill(-128), Promise.fulfill(-128));
+		assertSame(Promise.fulfill(127), Promise.fulfill(127));
+		assertTrue(Promise.fulfill(1000).isSettled());
+		assertTrue(Promise.reject(error).isSettled());
 
-		promise.finally_(new Runnable() {
+		reach[0] = 0;
+		Promise.resolve(Promise.fulfill(1)).then(new Consumer<Integer>() {
 			@Override
-			public void run() {
-				finished[0] = true;
+			public void accept(Integer value) {
+				assertEquals(1, value.intValue());
+				reach[0]++;
 			}
 		});
+		Promise.resolve(Promise.<Integer> reject(error)).catch_(
+				new Consumer<Exception>() {
+					@Override
+					public void accept(Exception reason) {
+						assertEquals(error, reason);
+						reach[0]++;
+					}
+				});
+		assertEquals(2, reach[0]);
 
-		while (!finished[0]) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException e) {
-				fail(e.getMessage());
+		reach[0] = 0;
+		wait(Promise.resolve(asyncSucceed(0)).then(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				assertEquals(1, value.intValue());
+				reach[0]++;
+			}
+		}));
+		assertEquals(1, reach[0]);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testAll() {
+		final Exception error = new Exception();
+		final int[] reach = new int[1];
+
+		reach[0] = 0;
+		wait(Promise.all(
+				Arrays.asList(asyncSucceed(0), Promise.fulfill(10),
+						asyncSucceed(20))).then(new Consumer<List<Integer>>() {
+			@Override
+			public void accept(List<Integer> values) {
+				assertEquals(Arrays.asList(1, 10, 21), values);
+				reach[0]++;
+			}
+		}));
+		assertEquals(1, reach[0]);
+
+		reach[0] = 0;
+		wait(Promise.all(Arrays.asList(asyncSucceed(0), asyncFail(error)))
+				.then(new Consumer<List<Integer>>() {
+					@Override
+					public void accept(List<Integer> values) {
+						fail("Never reaches here.");
+					}
+				}, new Function<Exception, Promise<Void>>() {
+					@Override
+					public Promise<Void> apply(Exception reason) {
+						assertEquals(error, reason);
+						reach[0]++;
+						return null;
+					}
+				}));
+		assertEquals(1, reach[0]);
+
+		reach[0] = 0;
+		Promise.all(new ArrayList<Promise<Integer>>()).then(
+				new Consumer<List<Integer>>() {
+					@Override
+					public void accept(List<Integer> values) {
+						assertTrue(values.isEmpty());
+						reach[0]++;
+					}
+				});
+		assertEquals(1, reach[0]);
+
+		final int count = 10000;
+		final Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		List<Promise<Integer>> promises = new ArrayList<Promise<Integer>>();
+		for (int i = 0; i < count; i++) {
+			final int offset = i;
+			promises.add(deferred.get0().then(
+					new Function<Integer, Promise<Integer>>() {
+						@Override
+						public Promise<Integer> apply(Integer value) {
+							return Promise.fulfill(value + offset);
+						}
+					}));
+		}
+		reach[0] = 0;
+		Promise.all(promises).then(new Consumer<List<Integer>>() {
+			@Override
+			public void accept(List<Integer> values) {
+				assertEquals(count, values.size());
+				for (int i = 0; i < count; i++) {
+					assertEquals(i + 1, values.get(i).intValue());
+				}
+				reach[0]++;
+			}
+		});
+		assertEquals(0, reach[0]);
+		deferred.get1().accept(1);
+		assertEquals(1, reach[0]);
+
+		// the other inputs are detached when all fails fast or is cancelled
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> pending = Promise
+				.deferred();
+		for (int i = 0; i < 1000; i++) {
+			Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> other = Promise
+					.deferred();
+			Promise<List<Integer>> all = Promise.all(Arrays.asList(
+					pending.get0(), other.get0()));
+			if (i % 2 == 0) {
+				other.get2().accept(error);
+			} else {
+				assertTrue(all.cancel());
+				assertEquals(0, other.get0().continuationCount());
+			}
+		}
+		assertEquals(0, pending.get0().continuationCount());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testAllSettled() {
+		final Exception error = new Exception();
+		final int[] reach = new int[1];
+
+		reach[0] = 0;
+		wait(Promise.allSettled(
+				Arrays.asList(asyncSucceed(0), asyncFail(error),
+						Promise.fulfill(5))).then(
+				new Consumer<List<Outcome<Integer>>>() {
+					@Override
+					public void accept(List<Outcome<Integer>> outcomes) {
+						assertEquals(3, outcomes.size());
+						assertTrue(outcomes.get(0).isFulfilled());
+						assertEquals(1, outcomes.get(0).getValue().intValue());
+						assertTrue(outcomes.get(1).isRejected());
+						assertEquals(error, outcomes.get(1).getReason());
+						assertEquals(5, outcomes.get(2).getValue().intValue());
+						reach[0]++;
+					}
+				}));
+		assertEquals(1, reach[0]);
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRace() {
+		final Exception error = new Exception();
+		final int[] reach = new int[1];
+
+		reach[0] = 0;
+		wait(Promise.race(Arrays.asList(asyncSucceed(0), Promise.<Integer> fulfill(10)))
+				.then(new Consumer<Integer>() {
+					@Override
+					public void accept(Integer value) {
+						assertEquals(10, value.intValue());
+						reach[0]++;
+					}
+				}));
+		assertEquals(1, reach[0]);
+
+		reach[0] = 0;
+		wait(Promise.race(Arrays.asList(asyncSucceed(0), asyncFail(error)))
+				.finally_(new Runnable() {
+					@Override
+					public void run() {
+						reach[0]++;
+					}
+				}));
+		assertEquals(1, reach[0]);
+
+		// losers are detached
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> upstream = Promise
+				.deferred();
+		for (int i = 0; i < 1000; i++) {
+			final int expected = i;
+			Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> hedge = Promise
+					.deferred();
+			reach[0] = 0;
+			Promise.race(Arrays.asList(upstream.get0(), hedge.get0())).then(
+					new Consumer<Integer>() {
+						@Override
+						public void accept(Integer value) {
+							assertEquals(expected, value.intValue());
+							reach[0]++;
+						}
+					});
+			if (i % 2 == 0) {
+				// a live dependent above the race's continuation
+				upstream.get0().then(new Consumer<Integer>() {
+					@Override
+					public void accept(Integer value) {
+					}
+				});
+			}
+			hedge.get1().accept(i);
+			assertEquals(1, reach[0]);
+		}
+		assertEquals(500, upstream.get0().continuationCount());
+
+		// so are the inputs of cancelled races
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> pending = Promise
+				.deferred();
+		for (int i = 0; i < 1000; i++) {
+			Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> hedge = Promise
+					.deferred();
+			Promise<Integer> race = Promise.race(Arrays.asList(pending.get0(),
+					hedge.get0()));
+			assertTrue(race.cancel());
+			assertEquals(0, hedge.get0().continuationCount());
+		}
+		assertEquals(0, pending.get0().continuationCount());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testAny() {
+		final Exception error = new Exception();
+		final Exception error2 = new Exception();
+		final int[] reach = new int[1];
+
+		reach[0] = 0;
+		wait(Promise.any(Arrays.asList(asyncFail(error), asyncSucceed(0)))
+				.then(new Consumer<Integer>() {
+					@Override
+					public void accept(Integer value) {
+						assertEquals(1, value.intValue());
+						reach[0]++;
+					}
+				}));
+		assertEquals(1, reach[0]);
+
+		reach[0] = 0;
+		wait(Promise.any(Arrays.asList(asyncFail(error), asyncFail(error2)))
+				.catch_(new Consumer<Exception>() {
+					@Override
+					public void accept(Exception reason) {
+						assertTrue(reason instanceof AggregateException);
+						assertEquals(Arrays.asList(error, error2),
+								((AggregateException) reason).getReasons());
+						reach[0]++;
+					}
+				}));
+		assertEquals(1, reach[0]);
+	}
+
+	@Test
+	public void testDelayAndTimeout() {
+		final Exception error = new Exception();
+		final int[] reach = new int[1];
+
+		reach[0] = 0;
+		final long start = System.nanoTime();
+		wait(Promise.delay(50).then(new Consumer<Void>() {
+			@Override
+			public void accept(Void value) {
+				assertTrue(System.nanoTime() - start >= 50000000L);
+				reach[0]++;
+			}
+		}));
+		assertEquals(1, reach[0]);
+
+		reach[0] = 0;
+		wait(asyncSucceed(0).timeout(10).then(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				fail("Never reaches here.");
+			}
+		}, new Function<Exception, Promise<Void>>() {
+			@Override
+			public Promise<Void> apply(Exception reason) {
+				assertTrue(reason instanceof PromiseTimeoutException);
+				reach[0]++;
+				return null;
+			}
+		}));
+		assertEquals(1, reach[0]);
+
+		reach[0] = 0;
+		wait(asyncSucceed(0).timeout(10000).then(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				assertEquals(1, value.intValue());
+				reach[0]++;
+			}
+		}));
+		assertEquals(1, reach[0]);
+
+		reach[0] = 0;
+		wait(asyncFail(error).timeout(10000).catch_(new Consumer<Exception>() {
+			@Override
+			public void accept(Exception reason) {
+				assertEquals(error, reason);
+				reach[0]++;
+			}
+		}));
+		assertEquals(1, reach[0]);
+
+		// timeouts outrun by their promises are released
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		for (int i = 0; i < 1000; i++) {
+			deferred.get0().timeout(100000);
+			Promise.fulfill(i).timeout(100000);
+		}
+		deferred.get1().accept(0);
+		assertEquals(0, ((ScheduledThreadPoolExecutor) Promise.scheduler())
+				.getQueue().size());
+	}
+
+	@Test
+	public void testTimersHandOffCallbacks() throws Exception {
+		final String[] threadNames = new String[1];
+		final CountDownLatch sleeping = new CountDownLatch(1);
+		Promise<Void> slow = Promise.delay(0).then(new Consumer<Void>() {
+			@Override
+			public void accept(Void value) {
+				threadNames[0] = Thread.currentThread().getName();
+				sleeping.countDown();
+				try {
+					Thread.sleep(1000L);
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		assertTrue(sleeping.await(1, TimeUnit.SECONDS));
+		assertNotEquals("QPromise-Scheduler", threadNames[0]);
+
+		// a callback blocking after one timer does not hold up the others
+		long start = System.nanoTime();
+		try {
+			Promise.<Integer> deferred().get0().timeout(10).await();
+			fail("Never reaches here.");
+		} catch (PromiseTimeoutException e) {
+		}
+		assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS
+				.toNanos(500));
+		slow.await(5, TimeUnit.SECONDS);
+
+		// cancelled delays are released
+		for (int i = 0; i < 1000; i++) {
+			Promise.delay(100000).cancel();
+		}
+		assertEquals(0, ((ScheduledThreadPoolExecutor) Promise.scheduler())
+				.getQueue().size());
+	}
+
+	private Promise<Integer> cancellableSucceed(final Integer value,
+			final int[] cancellations) {
+		return Promise
+				.cancellable(new Consumer<Tuple4<? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>, ? extends Consumer<? super Runnable>>>() {
+					@Override
+					public void accept(
+							final Tuple4<? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>, ? extends Consumer<? super Runnable>> executor) {
+						final TimerTask task = new TimerTask() {
+							@Override
+							public void run() {
+								executor.get0().accept(value + 1);
+							}
+						};
+						TIMER.schedule(task, 100L);
+						executor.get3().accept(new Runnable() {
+							@Override
+							public void run() {
+								task.cancel();
+								cancellations[0]++;
+							}
+						});
+					}
+				});
+	}
+
+	@Test
+	public void testCancel() {
+		final int[] cancellations = new int[1];
+		final int[] reach = new int[1];
+
+		// propagates to the executor
+		cancellations[0] = 0;
+		reach[0] = 0;
+		Promise<Integer> source = cancellableSucceed(0, cancellations);
+		Promise<Integer> promise = source.then(
+				new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer value) {
+						fail("Never reaches here.");
+						return null;
+					}
+				}).catch_(new Function<Exception, Promise<Integer>>() {
+			@Override
+			public Promise<Integer> apply(Exception reason) {
+				assertTrue(reason instanceof CancellationException);
+				reach[0]++;
+				return null;
+			}
+		});
+		assertTrue(promise.cancel());
+		assertTrue(promise.isCancelled());
+		assertTrue(source.isCancelled());
+		assertEquals(1, cancellations[0]);
+		assertEquals(0, reach[0]);
+		assertFalse(promise.cancel());
+
+		// downstream observes the cancellation
+		cancellations[0] = 0;
+		reach[0] = 0;
+		source = cancellableSucceed(0, cancellations);
+		Promise<Integer> middle = source.then(
+				new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer value) {
+						fail("Never reaches here.");
+						return null;
+					}
+				});
+		middle.catch_(new Consumer<Exception>() {
+			@Override
+			public void accept(Exception reason) {
+				assertTrue(reason instanceof CancellationException);
+				reach[0]++;
+			}
+		});
+		assertTrue(middle.cancel());
+		assertEquals(1, reach[0]);
+		assertEquals(1, cancellations[0]);
+
+		// upstream with other dependents keeps running
+		cancellations[0] = 0;
+		reach[0] = 0;
+		source = cancellableSucceed(0, cancellations);
+		Promise<Integer> first = source.catch_(new Consumer<Exception>() {
+			@Override
+			public void accept(Exception reason) {
+			}
+		});
+		Promise<Void> second = source.then(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				assertEquals(1, value.intValue());
+				reach[0]++;
 			}
+		});
+		assertTrue(first.cancel());
+		assertFalse(source.isSettled());
+		wait(second);
+		assertEquals(0, cancellations[0]);
+		assertEquals(1, reach[0]);
+
+		// through a promise returned by a callback
+		cancellations[0] = 0;
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		promise = deferred.get0().then(
+				new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer value) {
+						return cancellableSucceed(value, cancellations);
+					}
+				});
+		deferred.get1().accept(0);
+		assertTrue(promise.cancel());
+		assertEquals(1, cancellations[0]);
+
+		assertFalse(Promise.fulfill(0).cancel());
+	}
+
+	@Test
+	public void testAwait() throws Exception {
+		final Exception error = new Exception();
+
+		assertEquals(1, asyncSucceed(0).await().intValue());
+		assertEquals(1, asyncSucceed(0).await(10, TimeUnit.SECONDS).intValue());
+		assertEquals(2, Promise.fulfill(2).await().intValue());
+
+		try {
+			asyncFail(error).await();
+			fail("Never reaches here.");
+		} catch (Exception e) {
+			assertEquals(error, e);
+		}
+
+		Promise<Integer> promise = asyncSucceed(0);
+		try {
+			promise.await(10, TimeUnit.MILLISECONDS);
+			fail("Never reaches here.");
+		} catch (TimeoutException e) {
+		}
+		assertEquals(0, promise.continuationCount());
+
+		assertEquals(-1, promise.getNow(-1).intValue());
+		assertEquals(1, promise.await().intValue());
+		assertEquals(1, promise.getNow(-1).intValue());
+
+		Thread.currentThread().interrupt();
+		try {
+			asyncSucceed(0).await();
+			fail("Never reaches here.");
+		} catch (InterruptedException e) {
+		}
+	}
+
+	@Test
+	public void testAwaitInsideCallback() throws Exception {
+		final Function<Integer, Integer> increment = new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer value) {
+				return value + 1;
+			}
+		};
+		final Exception[] thrown = new Exception[1];
+		final int[] values = new int[3];
+
+		CompletablePromise<Integer> source = new CompletablePromise<Integer>();
+		Promise<Void> done = source.then(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				try {
+					// settled by continuations queued on this very thread
+					values[0] = Promise.fulfill(value).map(increment)
+							.getNow(-1);
+					values[1] = Promise.fulfill(value).map(increment)
+							.await(1, TimeUnit.SECONDS);
+					values[2] = Promise.fulfill(value).map(increment)
+							.await();
+				} catch (Exception e) {
+					thrown[0] = e;
+				}
+			}
+		});
+		source.complete(5);
+
+		assertTrue(done.isSettled());
+		assertEquals(null, thrown[0]);
+		assertEquals(6, values[0]);
+		assertEquals(6, values[1]);
+		assertEquals(6, values[2]);
+	}
+
+	@Test
+	public void testCompletableFuture() throws Exception {
+		final Exception error = new Exception();
+
+		assertEquals(1,
+				Promise.from(CompletableFuture.completedFuture(1)).await()
+						.intValue());
+
+		CompletableFuture<Integer> future = new CompletableFuture<Integer>();
+		Promise<Integer> promise = Promise.from(future);
+		assertFalse(promise.isSettled());
+		future.complete(2);
+		assertEquals(2, promise.getNow(null).intValue());
+
+		future = new CompletableFuture<Integer>();
+		promise = Promise.from(future);
+		future.completeExceptionally(error);
+		try {
+			promise.await();
+			fail("Never reaches here.");
+		} catch (Exception e) {
+			assertEquals(error, e);
+		}
+
+		future = new CompletableFuture<Integer>();
+		promise = Promise.from(future);
+		assertTrue(promise.cancel());
+		assertTrue(future.isCancelled());
+
+		future = new CompletableFuture<Integer>();
+		promise = Promise.from(future);
+		future.cancel(false);
+		assertTrue(promise.isCancelled());
+
+		assertEquals(1, asyncSucceed(0).toCompletableFuture().get().intValue());
+		assertEquals(3, Promise.fulfill(3).toCompletableFuture().get()
+				.intValue());
+
+		try {
+			asyncFail(error).toCompletableFuture().get();
+			fail("Never reaches here.");
+		} catch (ExecutionException e) {
+			assertEquals(error, e.getCause());
+		}
+
+		promise = asyncSucceed(0);
+		future = promise.toCompletableFuture();
+		assertTrue(future.cancel(false));
+		assertTrue(promise.isCancelled());
+
+		promise = asyncSucceed(0);
+		future = promise.toCompletableFuture();
+		promise.cancel();
+		assertTrue(future.isCancelled());
+	}
+
+	@Test
+	public void testMapAndRecover() {
+		final Exception error = new Exception();
+		final int[] reach = new int[1];
+
+		reach[0] = 0;
+		wait(asyncSucceed(0).map(new Function<Integer, String>() {
+			@Override
+			public String apply(Integer value) {
+				assertEquals(1, value.intValue());
+				reach[0]++;
+				return "v" + value;
+			}
+		}).recover(new Function<Exception, String>() {
+			@Override
+			public String apply(Exception reason) {
+				fail("Never reaches here.");
+				return null;
+			}
+		}).then(new Consumer<String>() {
+			@Override
+			public void accept(String value) {
+				assertEquals("v1", value);
+				reach[0]++;
+			}
+		}));
+		assertEquals(2, reach[0]);
+
+		reach[0] = 0;
+		wait(asyncFail(error).map(new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer value) {
+				fail("Never reaches here.");
+				return value;
+			}
+		}).recover(new Function<Exception, Integer>() {
+			@Override
+			public Integer apply(Exception reason) {
+				assertEquals(error, reason);
+				reach[0]++;
+				return 100;
+			}
+		}).then(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				assertEquals(100, value.intValue());
+				reach[0]++;
+			}
+		}));
+		assertEquals(2, reach[0]);
+	}
+
+	@Test
+	public void testPipeline() throws Exception {
+		final Exception error = new Exception();
+		final int[] reach = new int[1];
+
+		Promise.Pipeline<Integer, Integer> pipeline = Promise.pipeline();
+		for (int i = 0; i < 20; i++) {
+			pipeline = pipeline.map(new Function<Integer, Integer>() {
+				@Override
+				public Integer apply(Integer value) {
+					return value + 1;
+				}
+			});
+		}
+
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		Promise<Integer> promise = pipeline.apply(deferred.get0());
+		assertEquals(1, deferred.get0().continuationCount());
+		deferred.get1().accept(0);
+		assertEquals(20, promise.getNow(-1).intValue());
+
+		// async boundary and recovery
+		final Promise.Pipeline<Integer, String> mixed = pipeline
+				.then(new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer value) {
+						reach[0]++;
+						return asyncSucceed(value);
+					}
+				}).recover(new Function<Exception, Integer>() {
+					@Override
+					public Integer apply(Exception reason) {
+						assertEquals(error, reason);
+						reach[0]++;
+						return -1;
+					}
+				}).map(new Function<Integer, String>() {
+					@Override
+					public String apply(Integer value) {
+						return "v" + value;
+					}
+				});
+
+		reach[0] = 0;
+		wait(mixed.apply(asyncSucceed(0)).then(new Consumer<String>() {
+			@Override
+			public void accept(String value) {
+				assertEquals("v22", value);
+				reach[0]++;
+			}
+		}));
+		assertEquals(2, reach[0]);
+
+		reach[0] = 0;
+		wait(mixed.apply(asyncFail(error)).then(new Consumer<String>() {
+			@Override
+			public void accept(String value) {
+				assertEquals("v-1", value);
+				reach[0]++;
+			}
+		}));
+		assertEquals(2, reach[0]);
+	}
+
+	@Test
+	public void testPipelineResumedAcrossThreads() throws Exception {
+		final CompletablePromise<Integer> next = new CompletablePromise<Integer>();
+		final Promise<String> nextSibling = next.map(new Function<Integer, String>() {
+			@Override
+			public String apply(Integer value) {
+				return "next" + value;
+			}
+		});
+
+		// runs each task on a thread of its own and settles next on that
+		// thread once the pipeline has moved onto it, before the source's
+		// remaining continuations are fired
+		Executor executor = new Executor() {
+			@Override
+			public void execute(final Runnable command) {
+				Thread thread = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						command.run();
+						next.tryComplete(2);
+					}
+				});
+				thread.start();
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+
+		CompletablePromise<Integer> deferred = new CompletablePromise<Integer>();
+		Promise<Integer> source = deferred.on(executor);
+		Promise<Integer> promise = Promise.<Integer> pipeline()
+				.then(new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer value) {
+						return next;
+					}
+				}).apply(source);
+		Promise<String> sibling = source.map(new Function<Integer, String>() {
+			@Override
+			public String apply(Integer value) {
+				return "source" + value;
+			}
+		});
+
+		deferred.complete(1);
+		assertEquals(2, promise.await(1, TimeUnit.SECONDS).intValue());
+		assertEquals("source1", sibling.await(1, TimeUnit.SECONDS));
+		assertEquals("next2", nextSibling.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testMapConcurrent() throws Exception {
+		final Exception error = new Exception();
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+
+		List<Integer> items = new ArrayList<Integer>();
+		for (int i = 0; i < 40; i++) {
+			items.add(i);
+		}
+		List<Integer> values = Promise.mapConcurrent(items,
+				new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(final Integer item) {
+						int count = active.incrementAndGet();
+						for (int max = maxActive.get(); count > max; max = maxActive
+								.get()) {
+							maxActive.compareAndSet(max, count);
+						}
+						return Promise.delay(5).map(
+								new Function<Void, Integer>() {
+									@Override
+									public Integer apply(Void value) {
+										active.decrementAndGet();
+										return item * 2;
+									}
+								});
+					}
+				}, 4).await(10, TimeUnit.SECONDS);
+		assertEquals(40, values.size());
+		for (int i = 0; i < 40; i++) {
+			assertEquals(i * 2, values.get(i).intValue());
+		}
+		assertTrue(maxActive.get() <= 4);
+
+		// synchronous tasks
+		items.clear();
+		for (int i = 0; i < 100000; i++) {
+			items.add(i);
+		}
+		values = Promise.mapConcurrent(items,
+				new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer item) {
+						return Promise.fulfill(item);
+					}
+				}, 8).getNow(null);
+		assertEquals(items, values);
+
+		try {
+			Promise.mapConcurrent(Arrays.asList(0, 1, 2),
+					new Function<Integer, Promise<Integer>>() {
+						@Override
+						public Promise<Integer> apply(Integer item) {
+							return item == 1 ? asyncFail(error)
+									: asyncSucceed(item);
+						}
+					}, 2).await();
+			fail("Never reaches here.");
+		} catch (Exception e) {
+			assertEquals(error, e);
+		}
+	}
+
+	@Test
+	public void testMapConcurrentFailingPulls() throws Exception {
+		final IllegalStateException thrown = new IllegalStateException();
+		final CompletablePromise<Integer> first = new CompletablePromise<Integer>();
+		Promise<List<Integer>> nullMapped = Promise.mapConcurrent(
+				Arrays.asList(0, 1, 2), new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer item) {
+						return item == 0 ? first : null;
+					}
+				}, 1);
+
+		final CompletablePromise<Integer> second = new CompletablePromise<Integer>();
+		Iterable<Integer> failingItems = new Iterable<Integer>() {
+			@Override
+			public Iterator<Integer> iterator() {
+				return new Iterator<Integer>() {
+					private int next;
+
+					@Override
+					public boolean hasNext() {
+						return true;
+					}
+
+					@Override
+					public Integer next() {
+						if (next > 0) {
+							throw thrown;
+						}
+						return next++;
+					}
+				};
+			}
+		};
+		Promise<List<Integer>> failingPull = Promise.mapConcurrent(
+				failingItems, new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer item) {
+						return second;
+					}
+				}, 1);
+
+		// the next pulls happen on the threads settling these
+		first.complete(0);
+		second.complete(0);
+		try {
+			nullMapped.getNow(null);
+			fail("Never reaches here.");
+		} catch (NullPointerException e) {
+		}
+		try {
+			failingPull.getNow(null);
+			fail("Never reaches here.");
+		} catch (IllegalStateException e) {
+			assertSame(thrown, e);
+		}
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		final Exception error = new Exception();
+		final Exception fatal = new Exception();
+		final int[] attempts = new int[1];
+
+		attempts[0] = 0;
+		assertEquals(
+				1,
+				Promise.retry(new Supplier<Promise<Integer>>() {
+					@Override
+					public Promise<Integer> get() {
+						return ++attempts[0] < 3 ? asyncFail(error)
+								: asyncSucceed(0);
+					}
+				}, RetryPolicy.attempts(5).backoff(1, 10, 2.0).jitter(0.5))
+						.await().intValue());
+		assertEquals(3, attempts[0]);
+
+		attempts[0] = 0;
+		try {
+			Promise.retry(new Supplier<Promise<Integer>>() {
+				@Override
+				public Promise<Integer> get() {
+					attempts[0]++;
+					return Promise.reject(error);
+				}
+			}, RetryPolicy.attempts(4).backoff(1, 1, 1.0)).await();
+			fail("Never reaches here.");
+		} catch (Exception e) {
+			assertEquals(error, e);
+		}
+		assertEquals(4, attempts[0]);
+
+		attempts[0] = 0;
+		try {
+			Promise.retry(new Supplier<Promise<Integer>>() {
+				@Override
+				public Promise<Integer> get() {
+					return ++attempts[0] == 1 ? Promise.<Integer> reject(error)
+							: Promise.<Integer> reject(fatal);
+				}
+			}, RetryPolicy.attempts(10).backoff(1, 1, 1.0)
+					.retryOn(new Function<Exception, Boolean>() {
+						@Override
+						public Boolean apply(Exception reason) {
+							return reason != fatal;
+						}
+					})).await();
+			fail("Never reaches here.");
+		} catch (Exception e) {
+			assertEquals(fatal, e);
+		}
+		assertEquals(2, attempts[0]);
+	}
+
+	@Test
+	public void testRetryPredicateExceptions() throws Exception {
+		final Exception error = new Exception();
+		final IllegalStateException thrown = new IllegalStateException();
+		final CompletablePromise<Integer> attempt = new CompletablePromise<Integer>();
+		Promise<Integer> sibling = attempt.recover(new Function<Exception, Integer>() {
+			@Override
+			public Integer apply(Exception reason) {
+				return -1;
+			}
+		});
+
+		Promise<Integer> promise = Promise.retry(new Supplier<Promise<Integer>>() {
+			@Override
+			public Promise<Integer> get() {
+				return attempt;
+			}
+		}, RetryPolicy.attempts(3).backoff(0, 0, 1.0)
+				.retryOn(new Function<Exception, Boolean>() {
+					@Override
+					public Boolean apply(Exception reason) {
+						throw thrown;
+					}
+				}));
+
+		// the predicate's exception does not reach the settling thread
+		attempt.fail(error);
+		assertEquals(-1, sibling.getNow(0).intValue());
+		try {
+			promise.await(1, TimeUnit.SECONDS);
+			fail("Never reaches here.");
+		} catch (Exception e) {
+			assertSame(thrown, e);
+		}
+
+		try {
+			Promise.retry(new Supplier<Promise<Integer>>() {
+				@Override
+				public Promise<Integer> get() {
+					return Promise.reject(error);
+				}
+			}, RetryPolicy.attempts(3).backoff(0, 0, 1.0)
+					.retryOn(new Function<Exception, Boolean>() {
+						@Override
+						public Boolean apply(Exception reason) {
+							return null;
+						}
+					})).await(1, TimeUnit.SECONDS);
+			fail("Never reaches here.");
+		} catch (NullPointerException e) {
+		}
+	}
+
+	@Test
+	public void testRetryNullAttempts() throws Exception {
+		final int[] attempts = new int[1];
+		assertEquals(2, Promise.retry(new Supplier<Promise<Integer>>() {
+			@Override
+			public Promise<Integer> get() {
+				return ++attempts[0] < 3 ? null : Promise.fulfill(2);
+			}
+		}, RetryPolicy.attempts(3).backoff(0, 0, 1.0))
+				.await(1, TimeUnit.SECONDS).intValue());
+		assertEquals(3, attempts[0]);
+
+		try {
+			Promise.retry(new Supplier<Promise<Integer>>() {
+				@Override
+				public Promise<Integer> get() {
+					return null;
+				}
+			}, RetryPolicy.attempts(3).backoff(0, 0, 1.0)).await(1,
+					TimeUnit.SECONDS);
+			fail("Never reaches here.");
+		} catch (NullPointerException e) {
+		}
+	}
+
+	@Test
+	public void testRetrySharedAttempt() throws Exception {
+		final Exception error = new Exception();
+		final int[] attempts = new int[1];
+		final CompletablePromise<Integer> shared = new CompletablePromise<Integer>();
+		List<Promise<Integer>> siblings = new ArrayList<Promise<Integer>>();
+
+		Promise<Integer> promise = Promise.retry(new Supplier<Promise<Integer>>() {
+			@Override
+			public Promise<Integer> get() {
+				return ++attempts[0] == 1 ? shared : Promise.fulfill(2);
+			}
+		}, RetryPolicy.attempts(3).backoff(0, 0, 1.0));
+		for (int i = 0; i < 100; i++) {
+			siblings.add(shared.recover(new Function<Exception, Integer>() {
+				@Override
+				public Integer apply(Exception reason) {
+					return -1;
+				}
+			}));
+		}
+
+		// the next attempt may start on the scheduler while the shared
+		// attempt's other continuations are still being fired
+		shared.fail(error);
+		assertEquals(2, promise.await(1, TimeUnit.SECONDS).intValue());
+		for (Promise<Integer> sibling : siblings) {
+			assertEquals(-1, sibling.getNow(0).intValue());
+		}
+	}
+
+	@Test
+	public void testHandlerExceptions() throws Exception {
+		final RuntimeException error = new RuntimeException();
+		final int[] reach = new int[1];
+
+		Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		Promise<Integer> thrown = deferred.get0().then(
+				new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer value) {
+						throw error;
+					}
+				});
+		Promise<Integer> sibling = deferred.get0().map(
+				new Function<Integer, Integer>() {
+					@Override
+					public Integer apply(Integer value) {
+						reach[0]++;
+						return value + 1;
+					}
+				});
+		// the settling thread does not see the exception
+		deferred.get1().accept(1);
+		assertEquals(1, reach[0]);
+		assertEquals(2, sibling.getNow(-1).intValue());
+		try {
+			thrown.getNow(-1);
+			fail();
+		} catch (RuntimeException e) {
+			assertSame(error, e);
+		}
+
+		Promise<Integer> recovered = Promise.fulfill(1)
+				.map(new Function<Integer, Integer>() {
+					@Override
+					public Integer apply(Integer value) {
+						throw error;
+					}
+				}).catch_(new Function<Exception, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Exception reason) {
+						assertSame(error, reason);
+						return Promise.fulfill(-1);
+					}
+				});
+		assertEquals(-1, recovered.getNow(0).intValue());
+
+		Promise<Integer> finallyThrown = Promise.fulfill(1).finally_(
+				new Runnable() {
+					@Override
+					public void run() {
+						throw error;
+					}
+				});
+		try {
+			finallyThrown.getNow(-1);
+			fail();
+		} catch (RuntimeException e) {
+			assertSame(error, e);
+		}
+	}
+
+	@Test
+	public void testNullPromiseResults() throws Exception {
+		final int[] reach = new int[1];
+		CompletablePromise<Integer> source = new CompletablePromise<Integer>();
+		Promise<Integer> returnedNull = source
+				.then(new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer value) {
+						return null;
+					}
+				});
+		Promise<Integer> fusedNull = Promise.<Integer> pipeline()
+				.then(new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer value) {
+						return null;
+					}
+				}).apply(source);
+		Promise<Integer> sibling = source.map(new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer value) {
+				reach[0]++;
+				return value + 1;
+			}
+		});
+
+		source.complete(1);
+		assertEquals(1, reach[0]);
+		assertEquals(2, sibling.getNow(-1).intValue());
+		for (Promise<Integer> promise : Arrays.asList(returnedNull, fusedNull)) {
+			try {
+				promise.getNow(-1);
+				fail("Never reaches here.");
+			} catch (NullPointerException e) {
+			}
+		}
+	}
+
+	@Test
+	public void testThrowingContinuation() throws Exception {
+		final RuntimeException error = new RuntimeException();
+		CompletablePromise<Integer> source = new CompletablePromise<Integer>();
+		IntPromise promise = source.mapToInt(new ToIntFunction<Integer>() {
+			@Override
+			public int applyAsInt(Integer value) {
+				return value;
+			}
+		});
+		promise.defer(new Promise.Continuation<Object>(null) {
+			@Override
+			protected void onFulfilled(Object value) {
+				throw error;
+			}
+
+			@Override
+			protected void onRejected(Exception reason) {
+			}
+		});
+		IntPromise sibling = promise.map(new IntUnaryOperator() {
+			@Override
+			public int applyAsInt(int value) {
+				return value + 1;
+			}
+		});
+
+		// the others still run, and the settling thread sees the exception
+		try {
+			source.complete(1);
+			fail("Never reaches here.");
+		} catch (RuntimeException e) {
+			assertSame(error, e);
+		}
+		assertEquals(2, sibling.getNow(-1));
+	}
+
+	@Test
+	public void testFusedHandlerExceptions() throws Exception {
+		final RuntimeException error = new RuntimeException();
+
+		Promise.Pipeline<Integer, Integer> pipeline = Promise.<Integer> pipeline()
+				.map(new Function<Integer, Integer>() {
+					@Override
+					public Integer apply(Integer value) {
+						throw error;
+					}
+				}).recover(new Function<Exception, Integer>() {
+					@Override
+					public Integer apply(Exception reason) {
+						assertSame(error, reason);
+						return -1;
+					}
+				});
+		assertEquals(-1, pipeline.apply(Promise.fulfill(1)).getNow(0)
+				.intValue());
+	}
+
+	@Test
+	public void testAttempt() throws Exception {
+		final Exception error = new Exception();
+
+		assertEquals("a", Promise.attempt(new Callable<String>() {
+			@Override
+			public String call() {
+				return "a";
+			}
+		}).getNow(null));
+
+		try {
+			Promise.attempt(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					throw error;
+				}
+			}).getNow(null);
+			fail();
+		} catch (Exception e) {
+			assertSame(error, e);
+		}
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+		final Exception error = new Exception();
+
+		assertEquals("a", Promise.async(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				Thread.sleep(10L);
+				return "a";
+			}
+		}).await(5, TimeUnit.SECONDS));
+
+		try {
+			Promise.async(new Callable<String>() {
+				@Override
+				public String call() throws Exception {
+					throw error;
+				}
+			}).await(5, TimeUnit.SECONDS);
+			fail();
+		} catch (Exception e) {
+			assertSame(error, e);
+		}
+
+		// cancelling interrupts the running callable
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		Promise<Void> blocking = Promise.async(new Callable<Void>() {
+			@Override
+			public Void call() {
+				started.countDown();
+				try {
+					Thread.sleep(10000L);
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+				}
+				return null;
+			}
+		});
+		await(started);
+		assertTrue(blocking.cancel());
+		await(interrupted);
+		assertTrue(blocking.isCancelled());
+	}
+
+	@Test
+	public void testExecutor() {
+		final Thread[] executorThread = new Thread[1];
+		ExecutorService executor = Executors
+				.newSingleThreadExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						executorThread[0] = new Thread(runnable);
+						return executorThread[0];
+					}
+				});
+		final int[] reach = new int[1];
+
+		try {
+			reach[0] = 0;
+			wait(asyncSucceed(0).thenAsync(
+					new Function<Integer, Promise<Integer>>() {
+						@Override
+						public Promise<Integer> apply(Integer value) {
+							assertEquals(executorThread[0], Thread.currentThread());
+							assertEquals(1, value.intValue());
+							reach[0]++;
+							return Promise.fulfill(value);
+						}
+					}, executor).catchAsync(
+					new Function<Exception, Promise<Integer>>() {
+						@Override
+						public Promise<Integer> apply(Exception reason) {
+							fail("Never reaches here.");
+							return null;
+						}
+					}, executor));
+			assertEquals(1, reach[0]);
+
+			// default executor
+			reach[0] = 0;
+			wait(Promise.fulfill(0).on(executor)
+					.then(new Function<Integer, Promise<Integer>>() {
+						@Override
+						public Promise<Integer> apply(Integer value) {
+							assertEquals(executorThread[0], Thread.currentThread());
+							reach[0]++;
+							return Promise.fulfill(value);
+						}
+					}).finally_(new Runnable() {
+						@Override
+						public void run() {
+							assertEquals(executorThread[0], Thread.currentThread());
+							reach[0]++;
+						}
+					}));
+			assertEquals(2, reach[0]);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testRejectedExecution() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+
+		CompletablePromise<Integer> deferred = new CompletablePromise<Integer>();
+		Promise<Integer> async = deferred.thenAsync(
+				new Function<Integer, Promise<Integer>>() {
+					@Override
+					public Promise<Integer> apply(Integer value) {
+						return Promise.fulfill(value + 1);
+					}
+				}, executor);
+		Promise<Integer> mapped = deferred.on(executor).map(
+				new Function<Integer, Integer>() {
+					@Override
+					public Integer apply(Integer value) {
+						return value + 1;
+					}
+				});
+		Promise<Integer> sibling = deferred.map(new Function<Integer, Integer>() {
+			@Override
+			public Integer apply(Integer value) {
+				return value + 2;
+			}
+		});
+
+		// the completer does not see the executor's rejection
+		deferred.complete(1);
+		assertEquals(3, sibling.getNow(-1).intValue());
+		try {
+			async.getNow(-1);
+			fail("Never reaches here.");
+		} catch (RejectedExecutionException e) {
+		}
+		try {
+			mapped.getNow(-1);
+			fail("Never reaches here.");
+		} catch (RejectedExecutionException e) {
+		}
+	}
+
+	@Test
+	public void testConcurrentSettlement() throws InterruptedException {
+		final int threadCount = 8;
+		final int handlerCount = 1000;
+
+		for (int round = 0; round < 20; round++) {
+			final Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+					.deferred();
+			final AtomicIntegerArray calls = new AtomicIntegerArray(threadCount
+					* handlerCount);
+			final AtomicInteger settlements = new AtomicInteger();
+			final CountDownLatch start = new CountDownLatch(1);
+
+			Thread[] threads = new Thread[threadCount + 2];
+			for (int i = 0; i < threadCount; i++) {
+				final int offset = i * handlerCount;
+				threads[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						await(start);
+						for (int j = 0; j < handlerCount; j++) {
+							final int index = offset + j;
+							deferred.get0().then(new Consumer<Integer>() {
+								@Override
+								public void accept(Integer value) {
+									assertEquals(42, value.intValue());
+									calls.incrementAndGet(index);
+								}
+							});
+						}
+					}
+				});
+			}
+			for (int i = threadCount; i < threads.length; i++) {
+				threads[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						await(start);
+						try {
+							deferred.get1().accept(42);
+							settlements.incrementAndGet();
+						} catch (IllegalStateException e) {
+						}
+					}
+				});
+			}
+
+			for (Thread thread : threads) {
+				thread.start();
+			}
+			start.countDown();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			assertEquals(1, settlements.get());
+			assertTrue(deferred.get0().isSettled());
+			for (int i = 0; i < calls.length(); i++) {
+				assertEquals(1, calls.get(i));
+			}
+		}
+	}
+
+	@Test
+	public void testLongChain() {
+		final int length = 100000;
+		final Tuple4<? extends Promise<Integer>, ? extends Consumer<? super Integer>, ? extends Consumer<? super Exception>, ? extends Consumer<? super Promise<Integer>>> deferred = Promise
+				.deferred();
+		final int[] result = { -1 };
+
+		Promise<Integer> promise = deferred.get0();
+		for (int i = 0; i < length; i++) {
+			promise = promise.then(new Function<Integer, Promise<Integer>>() {
+				@Override
+				public Promise<Integer> apply(Integer value) {
+					return Promise.fulfill(value + 1);
+				}
+			});
+		}
+		promise.then(new Consumer<Integer>() {
+			@Override
+			public void accept(Integer value) {
+				result[0] = value;
+			}
+		});
+
+		deferred.get1().accept(0);
+		assertEquals(length, result[0]);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	private static <T> void wait(Promise<T> promise) {
+		try {
+			promise.await();
+		} catch (InterruptedException e) {
+			fail(e.getMessage());
+		} catch (Exception e) {
 		}
 	}
 }